@@ -0,0 +1,136 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.SpringIaApplication;
+import com.keniding.springia.chat.controller.ChatController;
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste propio del servicio por encima de Gemini: se arranca la aplicación
+ * con un {@link StubChatModel} y se llama a los métodos del controlador,
+ * sin HTTP. Caché y deduplicación van desactivadas para medir el camino
+ * completo en cada invocación.
+ * <p>
+ * Throughput y latencia (SampleTime, con percentiles); con {@code -prof gc}
+ * se añade la tasa de asignación por operación.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class ChatPathBenchmark {
+
+    private static final String MESSAGE = "Explica la fotosíntesis en pocas palabras";
+
+    private ConfigurableApplicationContext context;
+    private ChatController controller;
+    private JsonMapper jsonMapper;
+    private ChatRequest request;
+    private PromptKey key;
+    private ChatResponse response;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(SpringIaApplication.class, StubModelConfig.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.ai.google.genai.api-key=benchmark",
+                        "chat.cache.enabled=false",
+                        "chat.semantic-cache.enabled=false",
+                        "chat.coalescing.enabled=false",
+                        "chat.quota.enabled=false",
+                        "chat.hedging.enabled=false",
+                        "chat.warmup.enabled=false",
+                        "logging.level.com.keniding.springia=WARN")
+                .run();
+        controller = context.getBean(ChatController.class);
+        jsonMapper = context.getBean(JsonMapper.class);
+
+        request = new ChatRequest();
+        request.setMessage(MESSAGE);
+        request.setTemperature(0.3);
+        request.setMaxTokens(256);
+
+        key = PromptKey.of(MESSAGE, "gemini-2.5-flash", 0.7, 2048);
+        response = controller.customChat(request);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    /** GET /api/chat */
+    @Benchmark
+    public ChatResponse simpleChat() {
+        return controller.simpleChat(MESSAGE);
+    }
+
+    /** POST /api/chat */
+    @Benchmark
+    public ChatResponse customChat() {
+        return controller.customChat(request);
+    }
+
+    /** GET /api/chat/analyze (incluye la construcción de los mapas anidados) */
+    @Benchmark
+    public Map<String, Object> analyzeChat() {
+        return controller.analyzeChat(MESSAGE);
+    }
+
+    /** GET /api/chat/stream hasta el último fragmento */
+    @Benchmark
+    public void streamChat(Blackhole blackhole) {
+        controller.streamChat(MESSAGE, null)
+                .doOnNext(blackhole::consume)
+                .blockLast();
+    }
+
+    /** Serialización JSON de la respuesta que devuelve POST /api/chat */
+    @Benchmark
+    public byte[] serializeResponse() {
+        return jsonMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public Prompt buildPrompt() {
+        return ChatService.buildPrompt(MESSAGE, "gemini-2.5-flash", key);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class StubModelConfig {
+
+        @Bean
+        @Primary
+        ChatModel stubChatModel() {
+            return new StubChatModel();
+        }
+    }
+}
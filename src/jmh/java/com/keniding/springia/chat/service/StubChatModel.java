@@ -0,0 +1,63 @@
+package com.keniding.springia.chat.service;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ChatModel} determinista para los benchmarks: siempre la misma
+ * respuesta y el mismo uso de tokens, sin red ni esperas, de modo que lo
+ * medido es solo el coste propio del servicio.
+ */
+class StubChatModel implements ChatModel {
+
+    static final String ANSWER = """
+            La fotosíntesis es el proceso por el que las plantas convierten la luz \
+            del sol, el agua y el dióxido de carbono en glucosa y oxígeno. Ocurre \
+            en los cloroplastos y tiene una fase luminosa y otra oscura.""";
+
+    private static final int PROMPT_TOKENS = 12;
+    private static final int COMPLETION_TOKENS = 48;
+    private static final int STREAM_CHUNKS = 16;
+
+    private final ChatResponse response = new ChatResponse(
+            List.of(new Generation(new AssistantMessage(ANSWER))),
+            ChatResponseMetadata.builder()
+                    .usage(new DefaultUsage(PROMPT_TOKENS, COMPLETION_TOKENS))
+                    .build());
+
+    private final List<ChatResponse> chunks = splitIntoChunks();
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.fromIterable(chunks);
+    }
+
+    private static List<ChatResponse> splitIntoChunks() {
+        List<ChatResponse> chunks = new ArrayList<>(STREAM_CHUNKS);
+        int size = Math.ceilDiv(ANSWER.length(), STREAM_CHUNKS);
+        for (int start = 0; start < ANSWER.length(); start += size) {
+            String text = ANSWER.substring(start, Math.min(ANSWER.length(), start + size));
+            boolean last = start + size >= ANSWER.length();
+            chunks.add(new ChatResponse(
+                    List.of(new Generation(new AssistantMessage(text))),
+                    last
+                            ? ChatResponseMetadata.builder().usage(new DefaultUsage(PROMPT_TOKENS, COMPLETION_TOKENS)).build()
+                            : new ChatResponseMetadata()));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,38 @@
+package com.keniding.springia.chat.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Modelo de ejecución de las llamadas bloqueantes a Gemini.
+ * <p>
+ * Con {@code chat.execution.virtual-threads=true} (por defecto) tanto Tomcat
+ * ({@code spring.threads.virtual.enabled}) como las llamadas al modelo usan
+ * hilos virtuales, de modo que una llamada lenta no retiene un hilo de
+ * plataforma. Con {@code false} se usa un pool clásico de hilos de plataforma.
+ */
+@Slf4j
+@Configuration
+public class ChatExecutionConfig {
+
+    @Value("${chat.execution.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService chatUpstreamExecutor() {
+        if (virtualThreads) {
+            log.info("Llamadas a Gemini en hilos virtuales");
+            return Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("chat-upstream-vt-", 0).factory());
+        }
+
+        log.info("Llamadas a Gemini en hilos de plataforma");
+        return Executors.newCachedThreadPool(
+                Thread.ofPlatform().name("chat-upstream-", 0).daemon().factory());
+    }
+}
@@ -1,15 +1,39 @@
 package com.keniding.springia.chat.config;
 
 import com.google.genai.Client;
+import com.google.genai.types.HttpOptions;
+import com.keniding.springia.chat.service.GeminiClientPool;
+import com.keniding.springia.chat.service.GeminiClientPool.PooledKey;
+import com.keniding.springia.chat.service.UpstreamError;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.google.genai.GoogleGenAiChatModel;
 import org.springframework.ai.google.genai.GoogleGenAiChatOptions;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.retry.RetryPolicy;
+import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.retry.policy.ExceptionClassifierRetryPolicy;
+import org.springframework.retry.policy.NeverRetryPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.function.SingletonSupplier;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 
 @Slf4j
 @Configuration
@@ -18,6 +42,16 @@ public class GoogleGeminiConfig {
     @Value("${spring.ai.google.genai.api-key}")
     private String apiKey;
 
+    /** Claves adicionales para repartir la carga; si está vacío se usa solo {@code api-key}. */
+    @Value("${chat.gemini.api-keys:}")
+    private String[] apiKeys;
+
+    @Value("${chat.gemini.pool.eject-initial:5s}")
+    private Duration ejectInitial;
+
+    @Value("${chat.gemini.pool.eject-max:2m}")
+    private Duration ejectMax;
+
     @Value("${spring.ai.google.genai.chat.options.model:gemini-2.5-flash}")
     private String model;
 
@@ -27,34 +61,168 @@ public class GoogleGeminiConfig {
     @Value("${spring.ai.google.genai.chat.options.max-output-tokens:2048}")
     private Integer maxOutputTokens;
 
+    /** URL base alternativa de la API (p. ej. un servidor local para pruebas de carga). */
+    @Value("${chat.gemini.base-url:}")
+    private String baseUrl;
+
+    @Value("${chat.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${chat.retry.initial-interval:500ms}")
+    private Duration retryInitialInterval;
+
+    @Value("${chat.retry.multiplier:2.0}")
+    private double retryMultiplier;
+
+    @Value("${chat.retry.max-interval:10s}")
+    private Duration retryMaxInterval;
+
+    /** Intentos ante un 429 cuando solo hay una clave (con varias, el pool cambia de clave). */
+    @Value("${chat.retry.rate-limited-max-attempts:2}")
+    private int rateLimitedMaxAttempts;
+
+    /**
+     * Cliente de la primera clave. Además de servir chat lo usa el
+     * descubrimiento de modelos. Es perezoso para no alargar el arranque: se
+     * crea con la primera llamada o en el calentamiento.
+     */
     @Bean
+    @Lazy
     public Client googleGenAiClient() {
         log.info("Creando Google GenAI Client");
         log.info("   API Key configurada: {}", apiKey != null && !apiKey.isEmpty() ? "Sí" : "No");
-
-        return Client.builder()
-                .apiKey(apiKey)
-                .build();
+        if (!baseUrl.isBlank()) {
+            log.info("   URL base: {}", baseUrl);
+        }
+        return buildClient(keys().getFirst());
     }
 
+    /**
+     * Pool de clientes. El pool se crea al arrancar, pero el cliente y el
+     * modelo de cada clave solo se construyen al usarse por primera vez.
+     */
     @Bean
-    public ChatModel chatModel(Client googleGenAiClient) {
+    public GeminiClientPool chatModel(ObjectProvider<Client> googleGenAiClient,
+                                      ObjectProvider<ObservationRegistry> observationRegistry,
+                                      Environment environment,
+                                      MeterRegistry meterRegistry) {
+        List<String> keys = keys();
         log.info("Inicializando Google Gemini Chat Model");
         log.info("   Modelo: {}", model);
         log.info("   Temperature: {}", temperature);
         log.info("   Max Tokens: {}", maxOutputTokens);
+        log.info("   Claves de API: {}", keys.size());
 
         GoogleGenAiChatOptions options = GoogleGenAiChatOptions.builder()
                 .model(model)
                 .temperature(temperature)
                 .maxOutputTokens(maxOutputTokens)
                 .build();
+        RetryTemplate retryTemplate = retryTemplate(keys.size() == 1);
+        ObservationRegistry registry = observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP);
 
-        return GoogleGenAiChatModel.builder()
-                .genAiClient(googleGenAiClient)
-                .defaultOptions(options)
-                .retryTemplate(RetryTemplate.builder().build())
-                .observationRegistry(ObservationRegistry.NOOP)
+        List<PooledKey> pooled = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Supplier<Client> client = i == 0
+                    ? googleGenAiClient::getObject
+                    : SingletonSupplier.of(() -> buildClient(key));
+            Supplier<ChatModel> chatModel = SingletonSupplier.of(() -> GoogleGenAiChatModel.builder()
+                    .genAiClient(client.get())
+                    .defaultOptions(options)
+                    .retryTemplate(retryTemplate)
+                    .observationRegistry(registry)
+                    .build());
+            // Calentar: construir el modelo y abrir conexión con una consulta que no gasta cuota.
+            Runnable warmUp = () -> {
+                chatModel.get();
+                client.get().models.get(model, null);
+            };
+            pooled.add(new PooledKey("key-" + (i + 1), hint(key), new LazyChatModel(chatModel, options), warmUp));
+        }
+        return new GeminiClientPool(pooled, environment, meterRegistry, model, ejectInitial, ejectMax);
+    }
+
+    private List<String> keys() {
+        List<String> keys = Arrays.stream(apiKeys)
+                .map(String::trim)
+                .filter(key -> !key.isEmpty())
+                .distinct()
+                .toList();
+        return keys.isEmpty() ? List.of(apiKey) : keys;
+    }
+
+    private Client buildClient(String key) {
+        Client.Builder builder = Client.builder()
+                .apiKey(key);
+        if (!baseUrl.isBlank()) {
+            builder.httpOptions(HttpOptions.builder()
+                    .baseUrl(baseUrl)
+                    .build());
+        }
+        return builder.build();
+    }
+
+    /** Últimos caracteres de la clave, para identificarla en las métricas sin exponerla. */
+    private static String hint(String key) {
+        return key != null && key.length() > 8 ? "..." + key.substring(key.length() - 4) : "...";
+    }
+
+    /**
+     * Reintentos clasificados por tipo de error: los 4xx (incluido 404) no se
+     * reintentan nunca; 5xx y timeouts sí, con backoff exponencial y jitter
+     * para no sincronizar los reintentos de varias peticiones. Con varias
+     * claves el 429 no se reintenta aquí: el pool cambia de clave. Con una
+     * sola no hay a dónde cambiar, así que se reintenta hasta
+     * {@code chat.retry.rate-limited-max-attempts} con el mismo backoff; si
+     * aun así falla, QuotaScheduler bloquea el modelo para las siguientes.
+     */
+    private RetryTemplate retryTemplate(boolean retryRateLimited) {
+        RetryPolicy retryable = new SimpleRetryPolicy(retryMaxAttempts);
+        RetryPolicy rateLimited = retryRateLimited
+                ? new SimpleRetryPolicy(rateLimitedMaxAttempts)
+                : new NeverRetryPolicy();
+        RetryPolicy notRetryable = new NeverRetryPolicy();
+
+        ExceptionClassifierRetryPolicy retryPolicy = new ExceptionClassifierRetryPolicy();
+        retryPolicy.setExceptionClassifier(error -> {
+            UpstreamError cause = UpstreamError.classify(error);
+            if (cause == UpstreamError.RATE_LIMITED) {
+                return rateLimited;
+            }
+            return cause.isRetryable() ? retryable : notRetryable;
+        });
+
+        ExponentialRandomBackOffPolicy backOffPolicy = new ExponentialRandomBackOffPolicy();
+        backOffPolicy.setInitialInterval(retryInitialInterval.toMillis());
+        backOffPolicy.setMultiplier(retryMultiplier);
+        backOffPolicy.setMaxInterval(retryMaxInterval.toMillis());
+
+        log.info("   Reintentos: hasta {} intentos para 5xx/timeout, {} para 429",
+                retryMaxAttempts, retryRateLimited ? rateLimitedMaxAttempts : 1);
+
+        return RetryTemplate.builder()
+                .customPolicy(retryPolicy)
+                .customBackoff(backOffPolicy)
                 .build();
     }
+
+    /** Delega en un modelo que se construye con la primera llamada. */
+    private record LazyChatModel(Supplier<ChatModel> delegate, ChatOptions options) implements ChatModel {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return delegate.get().call(prompt);
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return delegate.get().stream(prompt);
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return options;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package com.keniding.springia.chat.config;
+
+import com.keniding.springia.chat.service.GeminiClientPool;
+import com.keniding.springia.chat.service.ModelDiscoveryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Calentamiento tras el arranque, fuera del camino crítico: la aplicación ya
+ * acepta tráfico mientras se descarga el catálogo de modelos y se crean los
+ * clientes de Gemini con su primera conexión. Sin él, todo eso ocurre con la
+ * primera petición que lo necesite.
+ * <p>
+ * Con {@code chat.warmup.exit-when-done} la aplicación termina al acabar: lo
+ * usa la ejecución de entrenamiento de la caché AOT del perfil {@code startup},
+ * para que las clases de los clientes también queden en la caché.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class StartupWarmup {
+
+    private final ModelDiscoveryService modelDiscoveryService;
+    private final ObjectProvider<GeminiClientPool> clientPool;
+    private final ApplicationContext applicationContext;
+
+    @Value("${chat.warmup.exit-when-done:false}")
+    private boolean exitWhenDone;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread.ofVirtual().name("chat-warmup").start(() -> {
+            long startNanos = System.nanoTime();
+            modelDiscoveryService.preload();
+            GeminiClientPool pool = clientPool.getIfAvailable();
+            if (pool != null) {
+                pool.warmUp();
+            }
+            log.info("Calentamiento completado en {} ms", (System.nanoTime() - startNanos) / 1_000_000);
+            if (exitWhenDone) {
+                System.exit(SpringApplication.exit(applicationContext));
+            }
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package com.keniding.springia.chat.config;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Diagnóstico de hilos virtuales anclados (pinned) a su hilo portador.
+ * <p>
+ * Escucha en caliente el evento JFR {@code jdk.VirtualThreadPinned} y registra
+ * la pila de cada bloqueo que supere el umbral configurado, para localizar
+ * código nativo o de librerías que impide liberar el portador.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.execution.pinning-diagnostics", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_FRAMES = 8;
+
+    @Value("${chat.execution.pinning-threshold:20ms}")
+    private Duration threshold;
+
+    private final LongAdder pinnedEvents = new LongAdder();
+    private RecordingStream recordingStream;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT)
+                .withThreshold(threshold)
+                .withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Diagnóstico de hilos virtuales anclados activo (umbral {})", threshold);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "pinnedEvents", pinnedEvents.sum(),
+                "threshold", threshold.toString()
+        );
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedEvents.increment();
+        log.warn("Hilo virtual anclado durante {} ms en:\n{}",
+                event.getDuration().toMillis(), formatStack(event));
+    }
+
+    private static String formatStack(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "    (sin pila)";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        return frames.stream()
+                .limit(MAX_FRAMES)
+                .map(frame -> "    at " + frame.getMethod().getType().getName()
+                        + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+    }
+}
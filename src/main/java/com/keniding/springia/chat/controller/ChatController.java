@@ -1,14 +1,27 @@
 package com.keniding.springia.chat.controller;
 
+import com.keniding.springia.chat.config.VirtualThreadPinningMonitor;
+import com.keniding.springia.chat.dto.BatchChatEvent;
+import com.keniding.springia.chat.dto.BatchChatRequest;
 import com.keniding.springia.chat.dto.ChatRequest;
 import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.BatchChatService;
 import com.keniding.springia.chat.service.ChatService;
+import com.keniding.springia.chat.service.GeminiClientPool;
+import com.keniding.springia.chat.service.PromptPreflight;
+import com.keniding.springia.chat.service.StreamRegistry;
+import com.keniding.springia.chat.service.UsageAccountant;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Slf4j
@@ -17,23 +30,203 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ChatController {
     private final ChatService chatService;
+    private final BatchChatService batchChatService;
+    private final UsageAccountant usageAccountant;
+    private final ObjectProvider<VirtualThreadPinningMonitor> pinningMonitor;
+    private final ObjectProvider<GeminiClientPool> clientPool;
 
     @GetMapping
     public ChatResponse simpleChat(@RequestParam String message) {
-        log.info("GET /api/chat - mensaje: {}", message);
+        log.debug("GET /api/chat - mensaje: {}", message);
         return chatService.simpleChat(message);
     }
 
     @PostMapping
     public ChatResponse customChat(@RequestBody ChatRequest request) {
-        log.info("POST /api/chat - request: {}", request);
+        log.debug("POST /api/chat - request: {}", request);
         return chatService.customChat(request);
     }
 
+    /**
+     * Streaming SSE reanudable: cada evento lleva id; al reconectar con
+     * {@code Last-Event-ID} se continúa la misma generación. El último evento
+     * ({@code usage}) trae tokens, motivo de fin y tiempo total
+     * GET /api/chat/stream?message=Tu mensaje aquí
+     */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> streamChat(@RequestParam String message) {
-        log.info("GET /api/chat/stream - mensaje: {}", message);
-        return chatService.streamChat(message);
+    public Flux<ServerSentEvent<Object>> streamChat(@RequestParam String message,
+                                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.debug("GET /api/chat/stream - mensaje: {}", message);
+        return toServerSentEvents(chatService.resumableStream(message, lastEventId));
+    }
+
+    /**
+     * Engancha otro cliente a una generación en curso, desde el principio
+     * GET /api/chat/stream/{streamId}
+     */
+    @GetMapping(value = "/stream/{streamId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> attachStream(@PathVariable String streamId) {
+        log.info("GET /api/chat/stream/{}", streamId);
+        return chatService.attachStream(streamId)
+                .map(events -> ResponseEntity.ok(toServerSentEvents(events)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Generaciones en streaming activas y reconexiones
+     * GET /api/chat/stream/stats
+     */
+    @GetMapping("/stream/stats")
+    public Map<String, Object> streamStats() {
+        return chatService.streamStats();
+    }
+
+    private static Flux<ServerSentEvent<Object>> toServerSentEvents(Flux<StreamRegistry.StreamEvent> events) {
+        return events
+                .map(event -> ServerSentEvent.builder(event.data())
+                        .id(event.id())
+                        .event(event.event())
+                        .build())
+                .onErrorResume(StreamRegistry.StreamResumeException.class, e -> Flux.just(
+                        ServerSentEvent.<Object>builder(e.getMessage())
+                                .event("error")
+                                .build()));
+    }
+
+    /**
+     * Ejecuta un lote de peticiones con paralelismo acotado y devuelve cada
+     * resultado según termina (NDJSON o SSE), seguido de un resumen final
+     * POST /api/chat/batch
+     */
+    @PostMapping(value = "/batch",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<BatchChatEvent> batchChat(@RequestBody BatchChatRequest request) {
+        log.info("POST /api/chat/batch - {} peticiones",
+                request.getRequests() != null ? request.getRequests().size() : 0);
+        return batchChatService.run(request);
+    }
+
+    /**
+     * Estadísticas de la caché de respuestas
+     * GET /api/chat/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return chatService.cacheStats();
+    }
+
+    /**
+     * Estadísticas de deduplicación de peticiones en vuelo
+     * GET /api/chat/coalescing/stats
+     */
+    @GetMapping("/coalescing/stats")
+    public Map<String, Object> coalescingStats() {
+        return chatService.coalescingStats();
+    }
+
+    /**
+     * Sesiones de conversación activas y compactación del historial
+     * GET /api/chat/sessions/stats
+     */
+    @GetMapping("/sessions/stats")
+    public Map<String, Object> sessionStats() {
+        return chatService.sessionStats();
+    }
+
+    /**
+     * Abre una sesión de conversación para el llamante ({@code X-Caller-Id}).
+     * El id lo genera el servidor y solo sirve para ese llamante
+     * POST /api/chat/sessions
+     */
+    @PostMapping("/sessions")
+    public ResponseEntity<Map<String, String>> startSession() {
+        String sessionId = chatService.startSession();
+        log.info("POST /api/chat/sessions - {}", sessionId);
+        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("sessionId", sessionId));
+    }
+
+    /**
+     * Cierra una sesión y descarta su historial
+     * DELETE /api/chat/sessions/{sessionId}
+     */
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<Void> endSession(@PathVariable String sessionId) {
+        log.info("DELETE /api/chat/sessions/{}", sessionId);
+        return chatService.endSession(sessionId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Registro de auditoría: registros escritos, en cola y descartados
+     * GET /api/chat/audit/stats
+     */
+    @GetMapping("/audit/stats")
+    public Map<String, Object> auditStats() {
+        return chatService.auditStats();
+    }
+
+    /**
+     * Estado del modelo de ejecución: llamadas en vuelo, cuota local, límite
+     * adaptativo, circuit breakers, estado de cada clave de API y, si el
+     * diagnóstico está activo, hilos virtuales anclados
+     * GET /api/chat/execution/stats
+     */
+    @GetMapping("/execution/stats")
+    public Map<String, Object> executionStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrency", chatService.concurrencyStats());
+        stats.put("quota", chatService.quotaStats());
+        stats.put("overload", chatService.overloadStats());
+        GeminiClientPool pool = clientPool.getIfAvailable();
+        if (pool != null) {
+            stats.put("keys", pool.stats());
+        }
+        VirtualThreadPinningMonitor monitor = pinningMonitor.getIfAvailable();
+        if (monitor != null) {
+            stats.put("pinning", monitor.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Predice tokens y costo de un mensaje sin llamar a Gemini. El costo es
+     * una cota superior: prompt estimado más el máximo de tokens de salida.
+     * GET /api/chat/estimate?message=Tu mensaje aquí&maxTokens=512
+     */
+    @GetMapping("/estimate")
+    public Map<String, Object> estimateChat(@RequestParam String message,
+                                            @RequestParam(required = false) Integer maxTokens) {
+        log.info("GET /api/chat/estimate");
+        ChatRequest request = new ChatRequest();
+        request.setMessage(message);
+        request.setMaxTokens(maxTokens);
+        return toEstimate(chatService.estimate(request));
+    }
+
+    /**
+     * Igual que GET /api/chat/estimate pero con el mismo cuerpo que POST /api/chat
+     * POST /api/chat/estimate
+     */
+    @PostMapping("/estimate")
+    public Map<String, Object> estimateChat(@RequestBody ChatRequest request) {
+        log.info("POST /api/chat/estimate");
+        return toEstimate(chatService.estimate(request));
+    }
+
+    private Map<String, Object> toEstimate(PromptPreflight.Result estimate) {
+        long maxCompletionTokens = estimate.maxTokens() != null ? estimate.maxTokens() : 0;
+        double maxCost = usageAccountant.cost(estimate.model(), estimate.estimatedPromptTokens(), maxCompletionTokens);
+
+        return Map.of(
+                "model", estimate.model(),
+                "estimatedPromptTokens", estimate.estimatedPromptTokens(),
+                "maxCompletionTokens", maxCompletionTokens,
+                "inputTokenLimit", estimate.inputTokenLimit(),
+                "outputTokenLimit", estimate.outputTokenLimit(),
+                "fits", estimate.fits(),
+                "estimatedMaxCost", String.format("$%.6f", maxCost)
+        );
     }
 
     /**
@@ -42,16 +235,16 @@ public class ChatController {
      */
     @GetMapping("/analyze")
     public Map<String, Object> analyzeChat(@RequestParam String message) {
-        log.info("GET /api/chat/analyze - mensaje: {}", message);
+        log.debug("GET /api/chat/analyze - mensaje: {}", message);
 
         ChatResponse response = chatService.simpleChat(message);
 
-        // Calcular costo estimado (ejemplo: $0.00025 por 1K tokens para Gemini)
-        double costPer1KTokens = 0.00025;
         Double estimatedCost = null;
 
         if (response.getTokensUsed() != null) {
-            estimatedCost = (response.getTokensUsed() / 1000.0) * costPer1KTokens;
+            estimatedCost = usageAccountant.cost(response.getModel(),
+                    response.getPromptTokens() != null ? response.getPromptTokens() : 0,
+                    response.getCompletionTokens() != null ? response.getCompletionTokens() : 0);
         }
 
         return Map.of(
@@ -71,4 +264,14 @@ public class ChatController {
                 )
         );
     }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidRequest(IllegalArgumentException e) {
+        log.warn("Petición inválida: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                        "error", "Bad Request",
+                        "message", e.getMessage()
+                ));
+    }
 }
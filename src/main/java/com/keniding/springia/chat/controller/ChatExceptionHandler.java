@@ -0,0 +1,63 @@
+package com.keniding.springia.chat.controller;
+
+import com.keniding.springia.chat.service.ConversationStore.SessionNotFoundException;
+import com.keniding.springia.chat.service.PromptPreflight.PromptTooLargeException;
+import com.keniding.springia.chat.service.ServiceOverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Manejo de excepciones común a todos los controladores de chat
+ */
+@Slf4j
+@RestControllerAdvice
+public class ChatExceptionHandler {
+
+    /**
+     * Rechazo temprano por saturación o circuito abierto: 503 con Retry-After
+     * para que el cliente reintente en lugar de quedarse esperando.
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleOverloaded(ServiceOverloadedException e) {
+        log.warn("Petición rechazada: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(Map.of(
+                        "error", "Service Unavailable",
+                        "message", e.getMessage()
+                ));
+    }
+
+    /**
+     * Prompt que no cabe en el modelo: se rechaza antes de llamar a Gemini.
+     */
+    @ExceptionHandler(PromptTooLargeException.class)
+    public ResponseEntity<Map<String, String>> handlePromptTooLarge(PromptTooLargeException e) {
+        log.warn("Prompt rechazado: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE)
+                .body(Map.of(
+                        "error", "Prompt Too Large",
+                        "message", e.getMessage()
+                ));
+    }
+
+    /**
+     * Sesión que no existe, ha caducado o es de otro llamante: el cliente
+     * debe abrir una nueva con POST /api/chat/sessions.
+     */
+    @ExceptionHandler(SessionNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleSessionNotFound(SessionNotFoundException e) {
+        log.warn("Sesión rechazada: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of(
+                        "error", "Not Found",
+                        "message", e.getMessage()
+                ));
+    }
+}
@@ -0,0 +1,58 @@
+package com.keniding.springia.chat.controller;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.DocumentService;
+import com.keniding.springia.chat.service.UsageAccountant;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/documents")
+@RequiredArgsConstructor
+public class DocumentController {
+
+    private final DocumentService documentService;
+
+    /**
+     * Aplica una instrucción a un documento de cualquier tamaño (map-reduce).
+     * El cuerpo es el texto plano del documento y se lee en streaming
+     * POST /api/documents?instruction=Resume el documento&parallelism=8
+     */
+    @PostMapping(consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ChatResponse process(HttpServletRequest request,
+                                @RequestParam(defaultValue = "Resume el documento") String instruction,
+                                @RequestParam(required = false) Integer parallelism,
+                                @RequestParam(required = false) Integer maxTokens) throws IOException {
+        log.info("POST /api/documents - instrucción: {}", instruction);
+        String caller = UsageAccountant.currentCaller();
+        Charset charset = request.getCharacterEncoding() != null
+                ? Charset.forName(request.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+        try (Reader reader = new InputStreamReader(request.getInputStream(), charset)) {
+            return documentService.process(reader, instruction, parallelism, maxTokens, caller);
+        }
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidRequest(IllegalArgumentException e) {
+        log.warn("Documento inválido: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                        "error", "Bad Request",
+                        "message", e.getMessage()
+                ));
+    }
+}
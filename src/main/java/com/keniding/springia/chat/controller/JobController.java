@@ -0,0 +1,87 @@
+package com.keniding.springia.chat.controller;
+
+import com.keniding.springia.chat.dto.ChatJob;
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.service.ChatJobService;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import com.keniding.springia.chat.service.UsageAccountant;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final ChatJobService chatJobService;
+
+    /**
+     * Encola una petición de chat y devuelve el trabajo con su id (202)
+     * POST /api/jobs?priority=LOW
+     */
+    @PostMapping
+    public ResponseEntity<ChatJob> submit(@RequestBody ChatRequest request,
+                                          @RequestParam(defaultValue = "NORMAL") Priority priority) {
+        log.info("POST /api/jobs - prioridad: {}", priority);
+        ChatJob job = chatJobService.submit(request, priority, UsageAccountant.currentCaller());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Estado del trabajo. Con {@code wait} (segundos) espera a que termine
+     * como mucho ese tiempo (long-poll)
+     * GET /api/jobs/{id}
+     * GET /api/jobs/{id}?wait=30
+     */
+    @GetMapping("/{id}")
+    public CompletableFuture<ResponseEntity<ChatJob>> get(@PathVariable String id,
+                                                          @RequestParam(required = false) Long wait) {
+        if (wait == null || wait <= 0) {
+            return CompletableFuture.completedFuture(chatJobService.get(id)
+                    .map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build()));
+        }
+        return chatJobService.await(id, Duration.ofSeconds(wait))
+                .map(future -> future.thenApply(ResponseEntity::ok))
+                .orElseGet(() -> CompletableFuture.completedFuture(ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * Cancela un trabajo que todavía no ha empezado
+     * DELETE /api/jobs/{id}
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        log.info("DELETE /api/jobs/{}", id);
+        return chatJobService.cancel(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    /**
+     * Estado de la cola de trabajos
+     * GET /api/jobs/stats
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return chatJobService.stats();
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<Map<String, String>> handleInvalidRequest(RuntimeException e) {
+        log.warn("Petición de trabajo inválida: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                        "error", "Bad Request",
+                        "message", e.getMessage()
+                ));
+    }
+}
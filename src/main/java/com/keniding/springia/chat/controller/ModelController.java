@@ -1,6 +1,7 @@
 package com.keniding.springia.chat.controller;
 
 import com.keniding.springia.chat.service.ModelDiscoveryService;
+import com.keniding.springia.chat.service.ModelDiscoveryService.CatalogSnapshot;
 import com.keniding.springia.chat.service.ModelDiscoveryService.ModelInfo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -112,8 +113,9 @@ public class ModelController {
     public ResponseEntity<Map<String, Object>> getModelsStats() {
         log.info("GET /api/models/stats - Obteniendo estadísticas de modelos");
         try {
-            List<ModelInfo> allModels = modelDiscoveryService.listAvailableModels();
-            List<ModelInfo> chatModels = modelDiscoveryService.listChatModels();
+            CatalogSnapshot snapshot = modelDiscoveryService.currentSnapshot();
+            List<ModelInfo> allModels = snapshot.all();
+            List<ModelInfo> chatModels = snapshot.chat();
 
             Map<String, Object> stats = Map.of(
                     "totalModels", allModels.size(),
@@ -121,7 +123,8 @@ public class ModelController {
                     "otherModels", allModels.size() - chatModels.size(),
                     "models", allModels.stream()
                             .map(ModelInfo::name)
-                            .toList()
+                            .toList(),
+                    "catalog", modelDiscoveryService.catalogStatus()
             );
 
             return ResponseEntity.ok(stats);
@@ -0,0 +1,49 @@
+package com.keniding.springia.chat.controller;
+
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.ChatService;
+import com.keniding.springia.chat.service.ReactiveChatService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * API de chat no bloqueante. Mismo contrato que {@link ChatController}, pero
+ * el hilo de la petición se libera mientras Gemini genera la respuesta.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/reactive/chat")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.reactive.enabled", havingValue = "true", matchIfMissing = true)
+public class ReactiveChatController {
+    private final ReactiveChatService reactiveChatService;
+    private final ChatService chatService;
+
+    @GetMapping
+    public Mono<ChatResponse> simpleChat(@RequestParam String message) {
+        log.debug("GET /api/reactive/chat - mensaje: {}", message);
+        return reactiveChatService.simpleChat(message);
+    }
+
+    @PostMapping
+    public Mono<ChatResponse> customChat(@RequestBody ChatRequest request) {
+        log.debug("POST /api/reactive/chat - request: {}", request);
+        return reactiveChatService.customChat(request);
+    }
+
+    /**
+     * El servidor pide un fragmento cada vez que termina de escribir el
+     * anterior, así que la contrapresión llega hasta la conexión HTTP.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> streamChat(@RequestParam String message) {
+        log.debug("GET /api/reactive/chat/stream - mensaje: {}", message);
+        return chatService.streamChat(message);
+    }
+}
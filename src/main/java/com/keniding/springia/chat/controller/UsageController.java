@@ -0,0 +1,32 @@
+package com.keniding.springia.chat.controller;
+
+import com.keniding.springia.chat.service.UsageAccountant;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/usage")
+@RequiredArgsConstructor
+public class UsageController {
+
+    private final UsageAccountant usageAccountant;
+
+    /**
+     * Tokens y coste por modelo y por llamante ({@code X-Caller-Id}) en el
+     * minuto en curso, la última hora, el último día y desde el arranque
+     * GET /api/usage
+     * GET /api/usage?caller=mi-servicio
+     */
+    @GetMapping
+    public Map<String, Object> usage(@RequestParam(required = false) String caller) {
+        log.info("GET /api/usage{}", caller != null ? " - llamante: " + caller : "");
+        return usageAccountant.report(caller);
+    }
+}
@@ -0,0 +1,36 @@
+package com.keniding.springia.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Evento del flujo de respuesta de un lote: un resultado por petición
+ * ({@code result} o {@code error}) en orden de finalización, y un
+ * {@code summary} final con los totales.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchChatEvent {
+    public static final String TYPE_RESULT = "result";
+    public static final String TYPE_ERROR = "error";
+    public static final String TYPE_SUMMARY = "summary";
+
+    private String type;
+    private Integer index;
+    private ChatResponse result;
+    private String error;
+
+    private Integer total;
+    private Integer succeeded;
+    private Integer failed;
+    private Long tokensUsed;
+    private Long promptTokens;
+    private Long completionTokens;
+    private Long wallTimeMs;
+}
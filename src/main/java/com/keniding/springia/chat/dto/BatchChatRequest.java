@@ -0,0 +1,15 @@
+package com.keniding.springia.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchChatRequest {
+    private List<ChatRequest> requests;
+    private Integer parallelism;
+}
@@ -0,0 +1,36 @@
+package com.keniding.springia.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Estado de un trabajo de chat asíncrono: {@code queued}, {@code running},
+ * {@code succeeded}, {@code failed} o {@code cancelled}. Al terminar con
+ * éxito lleva la respuesta en {@code result}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatJob {
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_SUCCEEDED = "succeeded";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_CANCELLED = "cancelled";
+
+    private String id;
+    private String status;
+    private String priority;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant completedAt;
+    private ChatResponse result;
+    private String error;
+}
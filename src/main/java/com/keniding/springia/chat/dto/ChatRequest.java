@@ -11,4 +11,9 @@ public class ChatRequest {
     private String message;
     private Double temperature;
     private Integer maxTokens;
+    /**
+     * Sesión abierta con POST /api/chat/sessions: el historial lo guarda el
+     * servidor para esta sesión.
+     */
+    private String sessionId;
 }
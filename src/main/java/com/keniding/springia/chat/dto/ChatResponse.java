@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -19,4 +19,6 @@ public class ChatResponse {
     private Integer completionTokens;
     private Long responseTimeMs;
     private String finishReason;
+    private Boolean cached;
+    private String sessionId;
 }
@@ -0,0 +1,163 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Límite de concurrencia adaptativo frente a Gemini (estilo gradiente).
+ * <p>
+ * Compara la latencia reciente con la latencia de referencia a largo plazo:
+ * si la reciente sube, Gemini está encolando y el límite baja; si se mantiene,
+ * el límite crece poco a poco. Lo que excede el límite se rechaza en el acto
+ * en lugar de quedarse esperando, de modo que las peticiones aceptadas
+ * mantienen una latencia acotada.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double SHORT_WINDOW_WEIGHT = 0.2;
+    private static final double LONG_WINDOW_WEIGHT = 0.01;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    @Value("${chat.overload.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.overload.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${chat.overload.min-limit:4}")
+    private int minLimit;
+
+    @Value("${chat.overload.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${chat.overload.retry-after:1s}")
+    private Duration retryAfter;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter shed;
+
+    private volatile double limit;
+    private double shortRttNanos;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry) {
+        this.shed = Counter.builder("chat.overload.shed")
+                .description("Peticiones rechazadas por el límite adaptativo")
+                .register(meterRegistry);
+        Gauge.builder("chat.overload.limit", this, l -> l.limit)
+                .description("Límite de concurrencia adaptativo actual")
+                .register(meterRegistry);
+        Gauge.builder("chat.overload.in.flight", inFlight, AtomicInteger::get)
+                .description("Llamadas a Gemini en curso")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        limit = initialLimit;
+    }
+
+    /**
+     * Reserva un hueco o lanza {@link ServiceOverloadedException} si se ha
+     * alcanzado el límite.
+     */
+    public void acquire() {
+        if (!tryAcquire()) {
+            shed.increment();
+            throw new LimitExceededException(retryAfter);
+        }
+    }
+
+    /** Como {@link #acquire()}, pero sin lanzar ni contar el rechazo. */
+    public boolean tryAcquire() {
+        if (!enabled) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libera el hueco. Las llamadas completadas aportan su latencia como
+     * muestra; las fallidas o de streaming no, porque no reflejan la cola.
+     */
+    public void release(long rttNanos, boolean sample) {
+        int inFlightAtEnd = inFlight.getAndDecrement();
+        if (!enabled || !sample || rttNanos <= 0) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (longRttNanos == 0) {
+                shortRttNanos = rttNanos;
+                longRttNanos = rttNanos;
+                return;
+            }
+            shortRttNanos += SHORT_WINDOW_WEIGHT * (rttNanos - shortRttNanos);
+            longRttNanos += LONG_WINDOW_WEIGHT * (rttNanos - longRttNanos);
+
+            // Si la referencia larga se queda muy por encima, se acerca más deprisa
+            // para no ocultar una mejora sostenida.
+            if (longRttNanos > 2 * shortRttNanos) {
+                longRttNanos *= 0.95;
+            }
+
+            // Sin demanda suficiente la latencia no dice nada sobre el límite.
+            if (inFlightAtEnd < limit / 2) {
+                return;
+            }
+
+            double gradient = Math.clamp(longRttNanos / shortRttNanos, MIN_GRADIENT, 1.0);
+            double queueSize = Math.sqrt(limit);
+            double target = limit * gradient + queueSize;
+            double next = limit * (1 - SMOOTHING) + target * SMOOTHING;
+            limit = Math.clamp(next, minLimit, maxLimit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "enabled", enabled,
+                "limit", (int) limit,
+                "inFlight", inFlight.get(),
+                "shed", (long) shed.count(),
+                "shortRttMs", shortRttNanos / 1_000_000,
+                "longRttMs", longRttNanos / 1_000_000
+        );
+    }
+
+    /**
+     * Rechazo por el límite global: afecta a todos los modelos por igual, así
+     * que no justifica pasar al siguiente de la cadena.
+     */
+    public static class LimitExceededException extends ServiceOverloadedException {
+        public LimitExceededException(Duration retryAfter) {
+            super("Servicio saturado, reintenta en unos segundos", retryAfter);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.keniding.springia.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de auditoría de todos los intercambios con el modelo.
+ * <p>
+ * El hilo de la petición solo deja el {@link AuditRecord} en una cola sin
+ * bloqueos; un único hilo escritor la vacía por lotes y añade los registros a
+ * segmentos mapeados en memoria ({@code audit-<n>.seg}), forzando el lote a
+ * disco al terminarlo. Al llenarse un segmento se abre el siguiente. Si la
+ * cola está llena el registro se descarta y se cuenta, para no frenar nunca
+ * la petición; con {@code chat.audit.block-when-full} la petición espera
+ * hueco como mucho {@code chat.audit.block-timeout} antes de descartarlo.
+ * <p>
+ * Un error de escritura no detiene el escritor: el lote pendiente se
+ * conserva y se reintenta (con un segmento nuevo) tras una espera que crece
+ * de forma exponencial. El estado del escritor se ve en {@link #stats()}.
+ * <p>
+ * Cada segmento empieza con una cabecera (magic y versión) seguida de
+ * registros {@code [longitud][crc32][cuerpo]}; una longitud 0 marca el final.
+ * Se leen y exportan con {@link AuditLogReader}.
+ */
+@Slf4j
+@Component
+public class AuditLog {
+
+    static final int MAGIC = 0x43484155;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+    static final int FRAME_BYTES = 2 * Integer.BYTES;
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final Duration RETRY_INITIAL = Duration.ofMillis(100);
+    private static final Duration RETRY_MAX = Duration.ofSeconds(30);
+
+    @Value("${chat.audit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.audit.dir:data/audit}")
+    private Path dir;
+
+    @Value("${chat.audit.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${chat.audit.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${chat.audit.batch-size:1024}")
+    private int batchSize;
+
+    @Value("${chat.audit.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    @Value("${chat.audit.block-when-full:false}")
+    private boolean blockWhenFull;
+
+    @Value("${chat.audit.block-timeout:1s}")
+    private Duration blockTimeout;
+
+    private final ConcurrentLinkedQueue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+    private final ReentrantLock spaceLock = new ReentrantLock();
+    private final Condition notFull = spaceLock.newCondition();
+
+    /** Registros ya sacados de la cola y codificados; solo los toca el escritor. */
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+    private volatile long failingSinceMillis;
+    private volatile String lastError;
+
+    private volatile boolean running;
+    private volatile Thread writer;
+    private volatile Segment segment;
+    private long nextSequence;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Registro de auditoría desactivado");
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            nextSequence = AuditLogReader.segments(dir).stream()
+                    .mapToLong(AuditLogReader::sequence)
+                    .max()
+                    .orElse(0) + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo preparar el directorio de auditoría " + dir, e);
+        }
+        running = true;
+        writer = Thread.ofPlatform().daemon().name("chat-audit-writer").start(this::writeLoop);
+        log.info("Registro de auditoría en {} (segmentos de {})", dir.toAbsolutePath(), segmentSize);
+    }
+
+    /** Vacía la cola, cierra el segmento en curso y lo recorta a su tamaño real. */
+    @PreDestroy
+    void stop() {
+        Thread current = writer;
+        if (current == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(current);
+        try {
+            current.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Encola un intercambio sin hacer E/S en el hilo llamante. Con la cola
+     * llena lo descarta, salvo con {@code chat.audit.block-when-full}, en
+     * cuyo caso espera hueco hasta {@code chat.audit.block-timeout}.
+     */
+    public void record(AuditRecord record) {
+        if (!enabled || writer == null) {
+            return;
+        }
+        long deadline = 0;
+        int size;
+        while ((size = queued.incrementAndGet()) > queueCapacity) {
+            queued.decrementAndGet();
+            if (blockWhenFull && deadline == 0) {
+                deadline = System.nanoTime() + blockTimeout.toNanos();
+            }
+            if (!blockWhenFull || !awaitSpace(deadline)) {
+                dropped.increment();
+                if (dropped.sum() % 1000 == 1) {
+                    log.error("Cola de auditoría llena ({}): {} registros descartados", queueCapacity, dropped.sum());
+                }
+                return;
+            }
+        }
+        queue.offer(record);
+        if (size == 1) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queued.get());
+        stats.put("written", written.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("batches", batches.sum());
+        stats.put("bytes", bytes.sum());
+        stats.put("writeErrors", writeErrors.sum());
+        Thread current = writer;
+        long failingSince = failingSinceMillis;
+        if (current == null || !current.isAlive()) {
+            stats.put("writer", "stopped");
+        } else if (failingSince != 0) {
+            stats.put("writer", "failing");
+            stats.put("failingForMs", System.currentTimeMillis() - failingSince);
+        } else {
+            stats.put("writer", "ok");
+        }
+        if (lastError != null) {
+            stats.put("lastError", lastError);
+        }
+        Segment open = segment;
+        if (open != null) {
+            stats.put("segment", open.path.getFileName().toString());
+        }
+        return stats;
+    }
+
+    private boolean awaitSpace(long deadline) {
+        spaceLock.lock();
+        try {
+            while (queued.get() >= queueCapacity) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                notFull.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            spaceLock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        long retryNanos = 0;
+        try {
+            while (running || !queue.isEmpty() || !pending.isEmpty()) {
+                try {
+                    int count = writeBatch();
+                    if (failingSinceMillis != 0) {
+                        log.info("El escritor de auditoría se ha recuperado");
+                        failingSinceMillis = 0;
+                    }
+                    retryNanos = 0;
+                    if (count == 0) {
+                        LockSupport.parkNanos(flushInterval.toNanos());
+                    }
+                } catch (RuntimeException | InternalError e) {
+                    // InternalError: fallo de E/S al tocar la memoria mapeada (disco lleno, por ejemplo).
+                    writeErrors.increment();
+                    lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                    if (failingSinceMillis == 0) {
+                        failingSinceMillis = System.currentTimeMillis();
+                    }
+                    closeSegment();
+                    if (!running) {
+                        log.error("Error de auditoría al cerrar: se pierden {} registros", pending.size() + queued.get(), e);
+                        return;
+                    }
+                    retryNanos = retryNanos == 0
+                            ? RETRY_INITIAL.toNanos()
+                            : Math.min(RETRY_MAX.toNanos(), retryNanos * 2);
+                    log.error("Error escribiendo la auditoría, se reintenta en {} ms: {}",
+                            TimeUnit.NANOSECONDS.toMillis(retryNanos), lastError);
+                    pause(retryNanos);
+                }
+            }
+        } finally {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Saca hasta un lote de la cola y lo escribe. Un registro que no se puede
+     * codificar se descarta solo; si falla la escritura, lo que quede sin
+     * escribir sigue en {@link #pending} para el siguiente intento.
+     */
+    private int writeBatch() {
+        AuditRecord record;
+        int polled = 0;
+        while (pending.size() < batchSize && (record = queue.poll()) != null) {
+            queued.decrementAndGet();
+            polled++;
+            try {
+                pending.add(record.encode());
+            } catch (RuntimeException e) {
+                dropped.increment();
+                log.warn("Registro de auditoría descartado: {}", e.getMessage());
+            }
+        }
+        if (polled > 0 && blockWhenFull) {
+            spaceLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                spaceLock.unlock();
+            }
+        }
+
+        int count = 0;
+        while (!pending.isEmpty()) {
+            append(pending.peekFirst());
+            pending.removeFirst();
+            written.increment();
+            count++;
+        }
+        if (count > 0) {
+            segment.memory.force();
+            batches.increment();
+        }
+        return count;
+    }
+
+    /** Espera sin que un registro nuevo la interrumpa; solo la corta el cierre. */
+    private void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void append(byte[] body) {
+        long needed = FRAME_BYTES + body.length;
+        // Se deja sitio para la marca de fin (longitud 0).
+        if (segment == null || segment.position + needed + Integer.BYTES > segment.memory.byteSize()) {
+            rollOver(needed);
+        }
+        Segment current = segment;
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        long at = current.position;
+        current.memory.asSlice(at + FRAME_BYTES, body.length).copyFrom(MemorySegment.ofArray(body));
+        current.memory.set(INT, at + Integer.BYTES, (int) crc.getValue());
+        // La longitud se escribe la última: un registro a medias nunca parece completo.
+        current.memory.set(INT, at, body.length);
+        current.position = at + needed;
+        bytes.add(needed);
+    }
+
+    private void rollOver(long needed) {
+        closeSegment();
+        long size = Math.max(segmentSize.toBytes(), HEADER_BYTES + needed + Integer.BYTES);
+        Path path = dir.resolve(AuditLogReader.segmentName(nextSequence++));
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Arena arena = Arena.ofShared();
+            MemorySegment memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            memory.set(INT, 0, MAGIC);
+            memory.set(INT, Integer.BYTES, VERSION);
+            segment = new Segment(path, channel, arena, memory, HEADER_BYTES);
+            log.debug("Nuevo segmento de auditoría {}", path.getFileName());
+        } catch (IOException e) {
+            // Un segmento sin cabecera no se deja a medias: el siguiente intento usa otro número.
+            if (channel != null) {
+                discard(path, channel);
+            }
+            throw new UncheckedIOException("No se pudo crear el segmento de auditoría " + path, e);
+        }
+    }
+
+    private static void discard(Path path, FileChannel channel) {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("No se pudo borrar el segmento de auditoría fallido {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void closeSegment() {
+        Segment current = segment;
+        if (current == null) {
+            return;
+        }
+        segment = null;
+        try {
+            current.memory.force();
+        } catch (RuntimeException | InternalError e) {
+            log.warn("No se pudo forzar a disco el segmento de auditoría {}: {}", current.path, e.getMessage());
+        }
+        try {
+            current.arena.close();
+            current.channel.truncate(current.position + Integer.BYTES);
+            current.channel.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error cerrando el segmento de auditoría {}: {}", current.path, e.getMessage());
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final Arena arena;
+        private final MemorySegment memory;
+        private long position;
+
+        private Segment(Path path, FileChannel channel, Arena arena, MemorySegment memory, long position) {
+            this.path = path;
+            this.channel = channel;
+            this.arena = arena;
+            this.memory = memory;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.keniding.springia.chat.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Lectura de los segmentos de {@link AuditLog} y exportación a JSON, un
+ * registro por línea. Solo depende del JDK, así que se puede lanzar contra
+ * las clases compiladas sin arrancar la aplicación:
+ * <pre>
+ * java -cp target/classes com.keniding.springia.chat.service.AuditLogReader \
+ *     data/audit [--since=2026-01-01T00:00:00Z] [--caller=equipo-a] &gt; audit.jsonl
+ * </pre>
+ * La lectura de un segmento se detiene en la marca de fin o en el primer
+ * registro incompleto o con CRC incorrecto (caída durante la escritura).
+ */
+public final class AuditLogReader {
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+
+    private AuditLogReader() {
+    }
+
+    static String segmentName(long sequence) {
+        return PREFIX + String.format("%010d", sequence) + SUFFIX;
+    }
+
+    static long sequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /** Segmentos del directorio en orden de escritura. */
+    public static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(file -> file.getFileName().toString().matches("audit-\\d{10}\\.seg"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /** Recorre los registros válidos de un segmento y devuelve cuántos hay. */
+    public static long read(Path segment, Consumer<AuditRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            if (channel.size() < AuditLog.HEADER_BYTES) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != AuditLog.MAGIC) {
+                throw new IOException("No es un segmento de auditoría: " + segment);
+            }
+            int version = buffer.getInt();
+            if (version != AuditLog.VERSION) {
+                throw new IOException("Versión de segmento no soportada " + version + ": " + segment);
+            }
+
+            long count = 0;
+            while (buffer.remaining() >= AuditLog.FRAME_BYTES) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                buffer.get(body);
+                CRC32 check = new CRC32();
+                check.update(body);
+                if ((int) check.getValue() != crc) {
+                    System.err.println("Registro dañado en " + segment + ", se ignora el resto del segmento");
+                    break;
+                }
+                consumer.accept(AuditRecord.decode(ByteBuffer.wrap(body)));
+                count++;
+            }
+            return count;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Uso: AuditLogReader <directorio> [--since=ISO-8601] [--caller=id]");
+            System.exit(2);
+        }
+        Path dir = Path.of(args[0]);
+        long since = Long.MIN_VALUE;
+        String caller = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--since=")) {
+                since = Instant.parse(args[i].substring("--since=".length())).toEpochMilli();
+            } else if (args[i].startsWith("--caller=")) {
+                caller = args[i].substring("--caller=".length());
+            } else {
+                System.err.println("Opción desconocida: " + args[i]);
+                System.exit(2);
+            }
+        }
+
+        long from = since;
+        String onlyCaller = caller;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            for (Path segment : segments(dir)) {
+                read(segment, record -> {
+                    if (record.timestamp() >= from && (onlyCaller == null || onlyCaller.equals(record.caller()))) {
+                        try {
+                            out.write(toJson(record));
+                            out.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    static String toJson(AuditRecord record) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(record.timestamp())).append('"');
+        json.append(",\"elapsedMs\":").append(record.elapsedMs());
+        field(json, "status", record.status());
+        field(json, "kind", record.kind());
+        field(json, "caller", record.caller());
+        field(json, "model", record.model());
+        field(json, "sessionId", record.sessionId());
+        if (record.promptTokens() >= 0) {
+            json.append(",\"promptTokens\":").append(record.promptTokens());
+        }
+        if (record.completionTokens() >= 0) {
+            json.append(",\"completionTokens\":").append(record.completionTokens());
+        }
+        field(json, "request", record.request());
+        field(json, "response", record.response());
+        return json.append('}').toString();
+    }
+
+    private static void field(StringBuilder json, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,108 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Un intercambio completo para el registro de auditoría: petición, respuesta,
+ * uso y tiempos.
+ * <p>
+ * Formato binario (big-endian): marca de tiempo y duración en {@code long},
+ * tokens de prompt y de respuesta en {@code int} ({@code -1} si se
+ * desconocen) y después las cadenas, cada una con su longitud en bytes UTF-8
+ * como {@code int} ({@code -1} para {@code null}).
+ */
+public record AuditRecord(
+        long timestamp,
+        long elapsedMs,
+        int promptTokens,
+        int completionTokens,
+        String status,
+        String kind,
+        String caller,
+        String model,
+        String sessionId,
+        String request,
+        String response
+) {
+
+    public static final String OK = "ok";
+    public static final String CACHED = "cached";
+    public static final String ERROR = "error";
+
+    public static final String CHAT = "chat";
+    public static final String STREAM = "stream";
+    public static final String REACTIVE = "reactive";
+
+    static AuditRecord of(String kind, String status, String caller, String request, String sessionId,
+                          ChatResponse response) {
+        return of(kind, status, caller, request, sessionId, response, response.getResponse());
+    }
+
+    /** Para streaming, donde el texto se acumula aparte de la respuesta final. */
+    static AuditRecord of(String kind, String status, String caller, String request, String sessionId,
+                          ChatResponse response, String answer) {
+        return new AuditRecord(
+                System.currentTimeMillis(),
+                response.getResponseTimeMs() != null ? response.getResponseTimeMs() : -1,
+                response.getPromptTokens() != null ? response.getPromptTokens() : -1,
+                response.getCompletionTokens() != null ? response.getCompletionTokens() : -1,
+                status, kind, caller, response.getModel(), sessionId, request, answer);
+    }
+
+    static AuditRecord error(String kind, String caller, String request, String sessionId, String model,
+                             Throwable error, long elapsedMs) {
+        return new AuditRecord(System.currentTimeMillis(), elapsedMs, -1, -1, ERROR, kind, caller, model,
+                sessionId, request, error.getMessage() != null ? error.getMessage() : error.getClass().getName());
+    }
+
+    byte[] encode() {
+        byte[][] strings = {
+                utf8(status), utf8(kind), utf8(caller), utf8(model), utf8(sessionId), utf8(request), utf8(response)
+        };
+        int size = Long.BYTES * 2 + Integer.BYTES * 2;
+        for (byte[] string : strings) {
+            size += Integer.BYTES + (string != null ? string.length : 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .putLong(timestamp)
+                .putLong(elapsedMs)
+                .putInt(promptTokens)
+                .putInt(completionTokens);
+        for (byte[] string : strings) {
+            if (string == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(string.length).put(string);
+            }
+        }
+        return buffer.array();
+    }
+
+    static AuditRecord decode(ByteBuffer buffer) {
+        return new AuditRecord(
+                buffer.getLong(),
+                buffer.getLong(),
+                buffer.getInt(),
+                buffer.getInt(),
+                string(buffer), string(buffer), string(buffer), string(buffer),
+                string(buffer), string(buffer), string(buffer));
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,138 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.BatchChatEvent;
+import com.keniding.springia.chat.dto.BatchChatRequest;
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ejecución de lotes de peticiones de chat con paralelismo acotado.
+ * Cada petición se resuelve de forma independiente: un fallo se informa
+ * en su propio evento y no interrumpe el resto del lote.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchChatService {
+
+    private final ChatService chatService;
+    private final ExecutorService chatUpstreamExecutor;
+
+    @Value("${chat.batch.default-parallelism:8}")
+    private int defaultParallelism;
+
+    @Value("${chat.batch.max-parallelism:32}")
+    private int maxParallelism;
+
+    @Value("${chat.batch.max-size:5000}")
+    private int maxBatchSize;
+
+    public Flux<BatchChatEvent> run(BatchChatRequest batch) {
+        List<ChatRequest> requests = batch.getRequests();
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("El lote no contiene peticiones");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException(
+                    "El lote supera el máximo de " + maxBatchSize + " peticiones");
+        }
+
+        int parallelism = Math.clamp(
+                batch.getParallelism() != null ? batch.getParallelism() : defaultParallelism,
+                1, maxParallelism);
+        log.info("Lote de {} peticiones con paralelismo {}", requests.size(), parallelism);
+
+        Scheduler scheduler = Schedulers.fromExecutorService(chatUpstreamExecutor);
+        String caller = UsageAccountant.currentCaller();
+
+        // Los totales se crean al suscribirse: el tiempo cuenta desde que el
+        // lote empieza a ejecutarse, no desde que se monta el Flux.
+        return Flux.defer(() -> {
+            BatchTotals totals = new BatchTotals(requests.size());
+            return Flux.range(0, requests.size())
+                    .flatMap(index -> Mono.fromCallable(() -> chatService.execute(requests.get(index), Priority.LOW, caller))
+                                    .subscribeOn(scheduler)
+                                    .map(response -> resultEvent(index, response))
+                                    .onErrorResume(e -> Mono.just(errorEvent(index, e))),
+                            parallelism)
+                    .doOnNext(totals::record)
+                    .concatWith(Mono.fromSupplier(totals::summary));
+        });
+    }
+
+    private static BatchChatEvent resultEvent(int index, ChatResponse response) {
+        return BatchChatEvent.builder()
+                .type(BatchChatEvent.TYPE_RESULT)
+                .index(index)
+                .result(response)
+                .build();
+    }
+
+    private static BatchChatEvent errorEvent(int index, Throwable e) {
+        log.warn("Error en la petición {} del lote: {}", index, e.getMessage());
+        return BatchChatEvent.builder()
+                .type(BatchChatEvent.TYPE_ERROR)
+                .index(index)
+                .error(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName())
+                .build();
+    }
+
+    private static final class BatchTotals {
+        private final int total;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final LongAdder tokens = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+
+        private BatchTotals(int total) {
+            this.total = total;
+        }
+
+        private void record(BatchChatEvent event) {
+            if (event.getResult() == null) {
+                failed.incrementAndGet();
+                return;
+            }
+            succeeded.incrementAndGet();
+            ChatResponse response = event.getResult();
+            if (response.getTokensUsed() != null) {
+                tokens.add(response.getTokensUsed());
+            }
+            if (response.getPromptTokens() != null) {
+                promptTokens.add(response.getPromptTokens());
+            }
+            if (response.getCompletionTokens() != null) {
+                completionTokens.add(response.getCompletionTokens());
+            }
+        }
+
+        private BatchChatEvent summary() {
+            return BatchChatEvent.builder()
+                    .type(BatchChatEvent.TYPE_SUMMARY)
+                    .total(total)
+                    .succeeded(succeeded.get())
+                    .failed(failed.get())
+                    .tokensUsed(tokens.sum())
+                    .promptTokens(promptTokens.sum())
+                    .completionTokens(completionTokens.sum())
+                    .wallTimeMs((System.nanoTime() - startNanos) / 1_000_000)
+                    .build();
+        }
+    }
+}
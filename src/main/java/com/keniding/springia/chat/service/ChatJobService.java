@@ -0,0 +1,369 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatJob;
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.JobJournal.Entry;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Trabajos de chat asíncronos: el cliente encola un {@link ChatRequest},
+ * recibe un id y consulta (o espera) el resultado, sin mantener la conexión
+ * abierta mientras Gemini genera.
+ * <p>
+ * La cola es por prioridad y orden de llegada; cada cambio de estado se
+ * apunta en un {@link JobJournal}, así que los trabajos pendientes (también
+ * los que estaban en curso al caerse) se recuperan al arrancar. Los
+ * resultados se guardan {@code chat.jobs.result-ttl}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatJobService {
+
+    private static final Comparator<Job> QUEUE_ORDER = Comparator
+            .comparing((Job job) -> job.priority)
+            .thenComparingLong(job -> job.seq);
+
+    private final ChatService chatService;
+    private final JsonMapper jsonMapper;
+
+    @Value("${chat.jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.jobs.journal:data/chat-jobs.journal}")
+    private Path journalPath;
+
+    @Value("${chat.jobs.fsync:true}")
+    private boolean fsync;
+
+    @Value("${chat.jobs.workers:4}")
+    private int workers;
+
+    @Value("${chat.jobs.max-queued:10000}")
+    private int maxQueued;
+
+    @Value("${chat.jobs.result-ttl:1h}")
+    private Duration resultTtl;
+
+    @Value("${chat.jobs.max-wait:60s}")
+    private Duration maxWait;
+
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+    private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>(64, QUEUE_ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    private final List<Thread> workerThreads = new ArrayList<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+
+    private JobJournal journal;
+
+    @PostConstruct
+    void recover() {
+        if (!enabled) {
+            return;
+        }
+        journal = new JobJournal(journalPath, jsonMapper, fsync);
+        replay(journal.open());
+        compact();
+        log.info("Cola de trabajos lista: {} pendientes recuperados, {} resultados conservados",
+                queue.size(), jobs.size() - queue.size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWorkers() {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < workers; i++) {
+            workerThreads.add(Thread.ofVirtual().name("chat-job-", i).start(this::workLoop));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workerThreads.forEach(Thread::interrupt);
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public ChatJob submit(ChatRequest request, Priority priority, String caller) {
+        if (!enabled) {
+            throw new IllegalStateException("La API de trabajos está desactivada");
+        }
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            throw new IllegalArgumentException("El mensaje no puede estar vacío");
+        }
+        if (queue.size() >= maxQueued) {
+            throw new ServiceOverloadedException("La cola de trabajos está llena", Duration.ofSeconds(30));
+        }
+        sweepIfDue();
+
+        Job job = new Job(UUID.randomUUID().toString(), sequence.incrementAndGet(), priority, caller,
+                request, Instant.now());
+        // Primero al diario: si se cae justo después, el trabajo se recupera.
+        journal.append(Entry.submit(job.id, job.seq, priority, caller, request, job.submittedAt),
+                () -> jobs.put(job.id, job));
+        queue.add(job);
+        submitted.increment();
+        return job.snapshot();
+    }
+
+    public Optional<ChatJob> get(String id) {
+        Job job = jobs.get(id);
+        return job != null ? Optional.of(job.snapshot()) : Optional.empty();
+    }
+
+    /**
+     * Espera a que el trabajo termine, como mucho {@code wait} (acotado por
+     * {@code chat.jobs.max-wait}), y devuelve su estado en ese momento.
+     */
+    public Optional<CompletableFuture<ChatJob>> await(String id, Duration wait) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        Duration bounded = wait.compareTo(maxWait) > 0 ? maxWait : wait;
+        return Optional.of(job.done.copy()
+                .completeOnTimeout(null, bounded.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(_ -> job.snapshot()));
+    }
+
+    /** Cancela un trabajo todavía en cola. */
+    public boolean cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null || !queue.remove(job)) {
+            return false;
+        }
+        Instant now = Instant.now();
+        journal.append(Entry.event(JobJournal.CANCEL, id, now),
+                () -> job.finish(ChatJob.STATUS_CANCELLED, null, null, now));
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queue.size());
+        stats.put("tracked", jobs.size());
+        stats.put("workers", workers);
+        stats.put("submitted", submitted.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("recovered", recovered.sum());
+        stats.put("journalEntries", journal != null ? journal.entries() : 0);
+        return stats;
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            run(job);
+        }
+    }
+
+    private void run(Job job) {
+        Instant startedAt = Instant.now();
+        journal.append(Entry.event(JobJournal.START, job.id, startedAt), () -> job.start(startedAt));
+        try {
+            ChatResponse response = chatService.execute(job.request, job.priority, job.caller);
+            Instant now = Instant.now();
+            journal.append(Entry.complete(job.id, response, now),
+                    () -> job.finish(ChatJob.STATUS_SUCCEEDED, response, null, now));
+            succeeded.increment();
+        } catch (ServiceOverloadedException e) {
+            // Saturación pasajera (también cuota local o tope por modelo): vuelve a la cola tras la espera.
+            log.debug("Trabajo {} reencolado: {}", job.id, e.getMessage());
+            sleep(e.getRetryAfter());
+            job.requeue();
+            queue.add(job);
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            log.warn("Trabajo {} fallido: {}", job.id, error);
+            Instant now = Instant.now();
+            journal.append(Entry.fail(job.id, error, now),
+                    () -> job.finish(ChatJob.STATUS_FAILED, null, error, now));
+            failed.increment();
+        }
+    }
+
+    private void replay(List<Entry> entries) {
+        for (Entry entry : entries) {
+            switch (entry.op()) {
+                case JobJournal.SUBMIT -> {
+                    Job job = new Job(entry.id(), entry.seq(), entry.priority(), entry.caller(),
+                            entry.request(), entry.at());
+                    jobs.put(job.id, job);
+                    sequence.accumulateAndGet(entry.seq(), Math::max);
+                }
+                case JobJournal.START -> {
+                    // Si no hay "complete" detrás, el trabajo se quedó a medias y se repite.
+                }
+                case JobJournal.COMPLETE -> replayFinish(entry, ChatJob.STATUS_SUCCEEDED);
+                case JobJournal.FAIL -> replayFinish(entry, ChatJob.STATUS_FAILED);
+                case JobJournal.CANCEL -> replayFinish(entry, ChatJob.STATUS_CANCELLED);
+                default -> log.warn("Operación desconocida en el diario de trabajos: {}", entry.op());
+            }
+        }
+
+        Instant expiry = Instant.now().minus(resultTtl);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(expiry));
+        for (Job job : jobs.values()) {
+            if (job.completedAt == null) {
+                queue.add(job);
+                recovered.increment();
+            }
+        }
+    }
+
+    private void replayFinish(Entry entry, String status) {
+        Job job = jobs.get(entry.id());
+        if (job != null) {
+            job.finish(status, entry.result(), entry.error(), entry.at());
+        }
+    }
+
+    /**
+     * Reescribe el diario con solo los trabajos vivos (pendientes o con
+     * resultado vigente). La foto se toma bajo el cerrojo del diario, el
+     * mismo con el que se añade cada entrada junto a su cambio de estado.
+     */
+    private void compact() {
+        journal.rewrite(this::liveEntries);
+    }
+
+    private List<Entry> liveEntries() {
+        List<Entry> live = new ArrayList<>();
+        jobs.values().stream()
+                .sorted(Comparator.comparingLong((Job job) -> job.seq))
+                .forEach(job -> {
+                    live.add(Entry.submit(job.id, job.seq, job.priority, job.caller, job.request, job.submittedAt));
+                    if (job.completedAt != null) {
+                        live.add(switch (job.status) {
+                            case ChatJob.STATUS_SUCCEEDED -> Entry.complete(job.id, job.result, job.completedAt);
+                            case ChatJob.STATUS_FAILED -> Entry.fail(job.id, job.error, job.completedAt);
+                            default -> Entry.event(JobJournal.CANCEL, job.id, job.completedAt);
+                        });
+                    }
+                });
+        return live;
+    }
+
+    /**
+     * Descarta resultados caducados, como mucho una vez por minuto, y
+     * compacta el diario si ya tiene muchas más entradas que trabajos vivos.
+     */
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        long last = lastSweepNanos.get();
+        if (now - last < Duration.ofMinutes(1).toNanos() || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        Instant expiry = Instant.now().minus(resultTtl);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(expiry));
+        if (journal.entries() > 2L * jobs.size() + 1000) {
+            compact();
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Job {
+        final String id;
+        final long seq;
+        final Priority priority;
+        final String caller;
+        final ChatRequest request;
+        final Instant submittedAt;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        volatile String status = ChatJob.STATUS_QUEUED;
+        volatile Instant startedAt;
+        volatile Instant completedAt;
+        volatile ChatResponse result;
+        volatile String error;
+
+        Job(String id, long seq, Priority priority, String caller, ChatRequest request, Instant submittedAt) {
+            this.id = id;
+            this.seq = seq;
+            this.priority = priority != null ? priority : Priority.NORMAL;
+            this.caller = caller != null ? caller : UsageAccountant.ANONYMOUS;
+            this.request = request;
+            this.submittedAt = submittedAt;
+        }
+
+        void start(Instant at) {
+            startedAt = at;
+            status = ChatJob.STATUS_RUNNING;
+        }
+
+        void requeue() {
+            startedAt = null;
+            status = ChatJob.STATUS_QUEUED;
+        }
+
+        void finish(String finalStatus, ChatResponse response, String failure, Instant at) {
+            result = response;
+            error = failure;
+            completedAt = at;
+            status = finalStatus;
+            done.complete(null);
+        }
+
+        ChatJob snapshot() {
+            return ChatJob.builder()
+                    .id(id)
+                    .status(status)
+                    .priority(priority.name())
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .completedAt(completedAt)
+                    .result(result)
+                    .error(error)
+                    .build();
+        }
+    }
+}
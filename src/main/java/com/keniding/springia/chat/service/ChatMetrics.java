@@ -0,0 +1,140 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Métricas de las llamadas a Gemini: latencia por modelo (con histograma de
+ * percentiles), tiempo hasta el primer token y entre fragmentos en streaming,
+ * tokens consumidos y errores clasificados por causa.
+ * <p>
+ * La latencia por endpoint la cubre {@code http.server.requests} de Spring MVC.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatMetrics {
+
+    private static final String UPSTREAM_LATENCY = "chat.upstream.latency";
+    private static final String TIME_TO_FIRST_TOKEN = "chat.stream.time.to.first.token";
+    private static final String INTER_CHUNK = "chat.stream.inter.chunk";
+    private static final String TOKENS = "chat.tokens";
+    private static final String ERRORS = "chat.upstream.errors";
+
+    private final MeterRegistry meterRegistry;
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void recordSuccess(String model, String mode, long startNanos, ChatResponse response) {
+        latencyTimer(model, mode, "success").record(Duration.ofNanos(System.nanoTime() - startNanos));
+        recordUsage(model, response.getMetadata().getUsage());
+    }
+
+    public UpstreamError recordError(String model, String mode, long startNanos, Throwable error) {
+        UpstreamError cause = UpstreamError.classify(error);
+        latencyTimer(model, mode, "error").record(Duration.ofNanos(System.nanoTime() - startNanos));
+        Counter.builder(ERRORS)
+                .description("Errores de Gemini por causa")
+                .tag("model", model)
+                .tag("cause", cause.tag())
+                .register(meterRegistry)
+                .increment();
+        return cause;
+    }
+
+    public void recordUsage(String model, Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getPromptTokens() != null) {
+            tokenCounter(model, "prompt").increment(usage.getPromptTokens());
+        }
+        if (usage.getCompletionTokens() != null) {
+            tokenCounter(model, "completion").increment(usage.getCompletionTokens());
+        }
+    }
+
+    /**
+     * Seguimiento de un stream: primer fragmento, intervalos entre fragmentos
+     * y uso de tokens del último fragmento que lo informe.
+     */
+    public StreamObservation startStream(String model) {
+        return new StreamObservation(model);
+    }
+
+    private Timer latencyTimer(String model, String mode, String outcome) {
+        return Timer.builder(UPSTREAM_LATENCY)
+                .description("Latencia de las llamadas a Gemini")
+                .tag("model", model)
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter tokenCounter(String model, String type) {
+        return Counter.builder(TOKENS)
+                .description("Tokens consumidos en Gemini")
+                .tag("model", model)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    public final class StreamObservation {
+        private final String model;
+        private final long startNanos = System.nanoTime();
+        private long lastChunkNanos;
+        private Usage usage;
+
+        private StreamObservation(String model) {
+            this.model = model;
+        }
+
+        public void onChunk(ChatResponse chunk) {
+            long now = System.nanoTime();
+            if (lastChunkNanos == 0) {
+                Timer.builder(TIME_TO_FIRST_TOKEN)
+                        .description("Tiempo hasta el primer fragmento del stream")
+                        .tag("model", model)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(Duration.ofNanos(now - startNanos));
+            } else {
+                Timer.builder(INTER_CHUNK)
+                        .description("Tiempo entre fragmentos consecutivos del stream")
+                        .tag("model", model)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(Duration.ofNanos(now - lastChunkNanos));
+            }
+            lastChunkNanos = now;
+
+            Usage chunkUsage = chunk.getMetadata().getUsage();
+            if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                usage = chunkUsage;
+            }
+        }
+
+        public void onComplete() {
+            latencyTimer(model, "stream", "success").record(Duration.ofNanos(System.nanoTime() - startNanos));
+            recordUsage(model, usage);
+        }
+
+        public void onError(Throwable error) {
+            recordError(model, "stream", startNanos, error);
+        }
+
+        public void onCancel() {
+            latencyTimer(model, "stream", "cancelled").record(Duration.ofNanos(System.nanoTime() - startNanos));
+            recordUsage(model, usage);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché acotada de respuestas exactas (mensaje normalizado + opciones).
+ * Límite por número de entradas y por bytes estimados, TTL y desalojo LRU.
+ */
+@Slf4j
+@Component
+public class ChatResponseCache {
+
+    /** Sobrecoste aproximado por entrada (clave, nodo del mapa, DTO). */
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    @Value("${chat.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${chat.cache.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${chat.cache.ttl:10m}")
+    private Duration ttl;
+
+    @Value("${chat.cache.max-temperature:1.0}")
+    private double maxTemperature;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<PromptKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Indica si la petición puede servirse desde caché. Las peticiones con
+     * temperatura alta buscan variedad, así que no se cachean.
+     */
+    public boolean isCacheable(PromptKey key) {
+        if (!enabled) {
+            return false;
+        }
+        if (!acceptsTemperature(key)) {
+            skipped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Devuelve una copia de la respuesta cacheada marcada como {@code cached},
+     * o {@code null} si no hay entrada vigente.
+     */
+    public ChatResponse get(PromptKey key) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (now - entry.expiresAtNanos() > 0) {
+                remove(key, entry);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.response().toBuilder()
+                    .cached(true)
+                    .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(PromptKey key, ChatResponse response) {
+        if (!enabled || !acceptsTemperature(key)) {
+            return;
+        }
+
+        long bytes = estimateBytes(key, response);
+        if (bytes > maxBytes) {
+            log.debug("Respuesta demasiado grande para la caché ({} bytes)", bytes);
+            return;
+        }
+
+        Entry entry = new Entry(response, System.nanoTime() + ttl.toNanos(), bytes);
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                currentBytes -= previous.bytes();
+            }
+            currentBytes += bytes;
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            currentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int size;
+        long bytes;
+        lock.lock();
+        try {
+            size = entries.size();
+            bytes = currentBytes;
+        } finally {
+            lock.unlock();
+        }
+
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+
+        return Map.of(
+                "enabled", enabled,
+                "entries", size,
+                "bytes", bytes,
+                "hits", hitCount,
+                "misses", missCount,
+                "hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0,
+                "evictions", evictions.sum(),
+                "expirations", expirations.sum(),
+                "skippedHighTemperature", skipped.sum()
+        );
+    }
+
+    private boolean acceptsTemperature(PromptKey key) {
+        return key.temperature() == null || key.temperature() <= maxTemperature;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<PromptKey, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || currentBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<PromptKey, Entry> eldest = it.next();
+            currentBytes -= eldest.getValue().bytes();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(PromptKey key, Entry entry) {
+        entries.remove(key);
+        currentBytes -= entry.bytes();
+    }
+
+    private static long estimateBytes(PromptKey key, ChatResponse response) {
+        long chars = key.message().length();
+        if (response.getResponse() != null) {
+            chars += response.getResponse().length();
+        }
+        return ENTRY_OVERHEAD_BYTES + chars * 2;
+    }
+
+    private record Entry(ChatResponse response, long expiresAtNanos, long bytes) {}
+}
@@ -2,16 +2,25 @@ package com.keniding.springia.chat.service;
 
 import com.keniding.springia.chat.dto.ChatRequest;
 import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.ConversationStore.SessionNotFoundException;
+import com.keniding.springia.chat.service.PromptPreflight.PromptTooLargeException;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.metadata.Usage;
-import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.google.genai.GoogleGenAiChatOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -19,51 +28,65 @@ import reactor.core.publisher.Flux;
 public class ChatService {
     private static final String ERROR_PREFIX = "Error: ";
     private static final String ERROR_UNKNOWN = "Error desconocido";
+    private static final String USAGE_EVENT = "usage";
 
-    private final ChatModel chatModel;
+    private final GeminiGateway geminiGateway;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final QuotaScheduler quotaScheduler;
+    private final AdaptiveConcurrencyLimiter adaptiveLimiter;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final HedgePolicy hedgePolicy;
+    private final LatencyTracker latencyTracker;
+    private final ModelRouter modelRouter;
+    private final TokenEstimator tokenEstimator;
+    private final PromptPreflight promptPreflight;
+    private final ChatResponseCache responseCache;
+    private final SemanticResponseCache semanticCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ConversationStore conversationStore;
+    private final ConversationCompactor conversationCompactor;
+    private final StreamRegistry streamRegistry;
+    private final ChunkCoalescer chunkCoalescer;
+    private final UsageAccountant usageAccountant;
+    private final AuditLog auditLog;
 
     @Value("${spring.ai.google.genai.chat.options.model:gemini-2.5-flash}")
     private String modelName;
 
-    public ChatResponse simpleChat(String message) {
-        long startTime = System.currentTimeMillis();
-
-        try {
-            log.info("Llamando a Gemini con mensaje: {}", message);
-            Prompt prompt = new Prompt(message);
-            org.springframework.ai.chat.model.ChatResponse aiResponse = chatModel.call(prompt);
+    @Value("${spring.ai.google.genai.chat.options.temperature:0.7}")
+    private Double defaultTemperature;
 
-            long endTime = System.currentTimeMillis();
+    @Value("${spring.ai.google.genai.chat.options.max-output-tokens:2048}")
+    private Integer defaultMaxTokens;
 
-            Integer totalTokens = null;
-            Integer promptTokens = null;
-            Integer completionTokens = null;
-
-            if (aiResponse.getMetadata().getUsage() != null) {
-                Usage usage = aiResponse.getMetadata().getUsage();
-                totalTokens = usage.getTotalTokens();
-                promptTokens = usage.getPromptTokens();
-                completionTokens = usage.getCompletionTokens();
-
-                log.info("Tokens usados - Prompt: {}, Completion: {}, Total: {}",
-                        promptTokens, completionTokens, totalTokens);
-            }
+    public ChatResponse simpleChat(String message) {
+        long startTime = System.nanoTime();
 
-            String responseText = aiResponse.getResult().getOutput().getText();
+        long promptTokens = tokenEstimator.estimate(message);
+        List<String> plan = modelRouter.route(promptTokens);
+        var preflight = promptPreflight.validate(plan.getFirst(), promptTokens, defaultMaxTokens);
 
-            log.info("Respuesta recibida en {} ms", endTime - startTime);
+        PromptKey key = PromptKey.of(message, plan.getFirst(), defaultTemperature, preflight.maxTokens());
+        String caller = UsageAccountant.currentCaller();
+        ChatResponse cached = lookupCache(key, startTime);
+        if (cached != null) {
+            auditLog.record(AuditRecord.of(AuditRecord.CHAT, AuditRecord.CACHED, caller, message, null, cached));
+            return cached;
+        }
 
-            return ChatResponse.builder()
-                    .response(responseText)
-                    .model(modelName)
-                    .tokensUsed(totalTokens)
-                    .promptTokens(promptTokens)
-                    .completionTokens(completionTokens)
-                    .responseTimeMs(endTime - startTime)
-                    .build();
+        try {
+            log.debug("Llamando a Gemini con mensaje: {}", message);
+            ChatResponse response = requestCoalescer.execute(key,
+                    () -> callModel(key, message, promptTokens, defaultMaxTokens, plan, Priority.NORMAL, caller));
+            auditLog.record(AuditRecord.of(AuditRecord.CHAT, AuditRecord.OK, caller, message, null, response));
+            return response;
 
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error en simpleChat: ", e);
+            auditLog.record(AuditRecord.error(AuditRecord.CHAT, caller, message, null, modelName, e,
+                    elapsedMs(startTime)));
 
             String errorMessage = getString(e);
 
@@ -71,7 +94,7 @@ public class ChatService {
                     .response(errorMessage)
                     .model(modelName)
                     .tokensUsed(0)
-                    .responseTimeMs(System.currentTimeMillis() - startTime)
+                    .responseTimeMs(elapsedMs(startTime))
                     .build();
         }
     }
@@ -91,41 +114,21 @@ public class ChatService {
     }
 
     public ChatResponse customChat(ChatRequest chatRequest) {
-        long startTime = System.currentTimeMillis();
-
-        try {
-            var options = GoogleGenAiChatOptions.builder()
-                    .temperature(chatRequest.getTemperature() != null ?
-                            chatRequest.getTemperature() : 0.7)
-                    .maxOutputTokens(chatRequest.getMaxTokens() != null ?
-                            chatRequest.getMaxTokens() : 2048)
-                    .build();
-
-            var prompt = new Prompt(chatRequest.getMessage(), options);
-            var aiResponse = chatModel.call(prompt);
-
-            long endTime = System.currentTimeMillis();
-
-            Integer totalTokens = null;
-            Integer promptTokens = null;
-            Integer completionTokens = null;
+        return customChat(chatRequest, UsageAccountant.currentCaller());
+    }
 
-            if (aiResponse.getMetadata().getUsage() != null) {
-                Usage usage = aiResponse.getMetadata().getUsage();
-                totalTokens = usage.getTotalTokens();
-                promptTokens = usage.getPromptTokens();
-                completionTokens = usage.getCompletionTokens();
-            }
+    /**
+     * Como {@link #customChat(ChatRequest)} con el llamante ya resuelto, para
+     * quien no está en el hilo de la petición HTTP.
+     */
+    public ChatResponse customChat(ChatRequest chatRequest, String caller) {
+        long startTime = System.nanoTime();
 
-            return ChatResponse.builder()
-                    .response(aiResponse.getResult().getOutput().getText())
-                    .model(modelName)
-                    .tokensUsed(totalTokens)
-                    .promptTokens(promptTokens)
-                    .completionTokens(completionTokens)
-                    .responseTimeMs(endTime - startTime)
-                    .build();
+        try {
+            return execute(chatRequest, Priority.NORMAL, caller);
 
+        } catch (ServiceOverloadedException | PromptTooLargeException | SessionNotFoundException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error en customChat: ", e);
 
@@ -133,23 +136,344 @@ public class ChatService {
                     .response(ERROR_PREFIX + (e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN))
                     .model(modelName)
                     .tokensUsed(0)
-                    .responseTimeMs(System.currentTimeMillis() - startTime)
+                    .responseTimeMs(elapsedMs(startTime))
                     .build();
         }
     }
 
+    /**
+     * Igual que {@link #customChat} pero propaga los errores en lugar de
+     * convertirlos en texto, para los llamantes que necesitan distinguirlos.
+     */
+    public ChatResponse execute(ChatRequest chatRequest) {
+        return execute(chatRequest, Priority.NORMAL);
+    }
+
+    /**
+     * Ejecuta la petición con la prioridad indicada frente a la cuota local:
+     * el tráfico en segundo plano (lotes) cede el paso al interactivo.
+     */
+    public ChatResponse execute(ChatRequest chatRequest, Priority priority) {
+        return execute(chatRequest, priority, UsageAccountant.currentCaller());
+    }
+
+    /**
+     * Ejecuta la petición cargando el consumo de tokens a {@code caller}. El
+     * intercambio, también si falla, queda en el registro de auditoría.
+     */
+    public ChatResponse execute(ChatRequest chatRequest, Priority priority, String caller) {
+        long startTime = System.nanoTime();
+        try {
+            return audited(chatRequest, priority, caller, startTime);
+        } catch (RuntimeException e) {
+            if (!(e instanceof ServiceOverloadedException)) {
+                auditLog.record(AuditRecord.error(AuditRecord.CHAT, caller, chatRequest.getMessage(),
+                        chatRequest.getSessionId(), modelName, e, elapsedMs(startTime)));
+            }
+            throw e;
+        }
+    }
+
+    private ChatResponse audited(ChatRequest chatRequest, Priority priority, String caller, long startTime) {
+        if (chatRequest.getSessionId() != null && !chatRequest.getSessionId().isBlank()) {
+            ChatResponse response = sessionChat(chatRequest, priority, caller);
+            auditLog.record(AuditRecord.of(AuditRecord.CHAT, AuditRecord.OK, caller, chatRequest.getMessage(),
+                    response.getSessionId(), response));
+            return response;
+        }
+
+        Double temperature = chatRequest.getTemperature() != null ?
+                chatRequest.getTemperature() : defaultTemperature;
+        Integer maxTokens = chatRequest.getMaxTokens() != null ?
+                chatRequest.getMaxTokens() : defaultMaxTokens;
+
+        long promptTokens = tokenEstimator.estimate(chatRequest.getMessage());
+        List<String> plan = modelRouter.route(promptTokens);
+        var preflight = promptPreflight.validate(plan.getFirst(), promptTokens, maxTokens);
+
+        PromptKey key = PromptKey.of(chatRequest.getMessage(), plan.getFirst(), temperature, preflight.maxTokens());
+        ChatResponse cached = lookupCache(key, startTime);
+        if (cached != null) {
+            auditLog.record(AuditRecord.of(AuditRecord.CHAT, AuditRecord.CACHED, caller,
+                    chatRequest.getMessage(), null, cached));
+            return cached;
+        }
+
+        ChatResponse response = requestCoalescer.execute(key,
+                () -> callModel(key, chatRequest.getMessage(), promptTokens, maxTokens, plan, priority, caller));
+        auditLog.record(AuditRecord.of(AuditRecord.CHAT, AuditRecord.OK, caller,
+                chatRequest.getMessage(), null, response));
+        return response;
+    }
+
+    /**
+     * Turno de una conversación guardada en el servidor. El prompt se arma con
+     * el resumen y la ventana de turnos recientes; no pasa por la caché ni por
+     * la deduplicación porque depende del historial. Los turnos de una misma
+     * sesión se ejecutan en orden.
+     */
+    private ChatResponse sessionChat(ChatRequest chatRequest, Priority priority, String caller) {
+        long startTime = System.nanoTime();
+
+        Double temperature = chatRequest.getTemperature() != null ?
+                chatRequest.getTemperature() : defaultTemperature;
+        Integer maxTokens = chatRequest.getMaxTokens() != null ?
+                chatRequest.getMaxTokens() : defaultMaxTokens;
+        String message = chatRequest.getMessage();
+
+        ConversationStore.Conversation conversation = conversationStore.open(caller, chatRequest.getSessionId());
+        ChatResponse response;
+        conversation.lock();
+        try {
+            long messageTokens = tokenEstimator.estimate(message);
+            long promptTokens = conversation.contextTokens() + messageTokens;
+            List<String> plan = modelRouter.route(promptTokens);
+            var preflight = promptPreflight.validate(plan.getFirst(), promptTokens, maxTokens);
+
+            PromptKey key = PromptKey.of(message, plan.getFirst(), temperature, preflight.maxTokens());
+            List<Message> messages = conversation.messages(message);
+
+            ModelCall call = modelRouter.call(plan, model -> new ModelCall(model,
+                    geminiGateway.call(model, buildPrompt(messages, model,
+                            promptPreflight.forModel(key, model, promptTokens, maxTokens)), priority)));
+            response = toChatResponse(call, elapsedMs(startTime));
+            response.setSessionId(conversation.id());
+            usageAccountant.record(call.model(), caller, response.getPromptTokens(), response.getCompletionTokens());
+
+            String answer = response.getResponse() != null ? response.getResponse() : "";
+            conversation.append(new ConversationStore.Turn(message, answer,
+                    messageTokens + tokenEstimator.estimate(answer)));
+        } finally {
+            conversation.unlock();
+        }
+
+        conversationCompactor.compactIfNeeded(conversation);
+        return response;
+    }
+
+    /**
+     * Abre una conversación nueva para el llamante y devuelve su id, que es
+     * el que luego se manda en {@code ChatRequest.sessionId}.
+     */
+    public String startSession() {
+        return conversationStore.create(UsageAccountant.currentCaller()).id();
+    }
+
+    public boolean endSession(String sessionId) {
+        return conversationStore.remove(UsageAccountant.currentCaller(), sessionId);
+    }
+
+    public Map<String, Object> sessionStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(conversationStore.stats());
+        stats.put("compaction", conversationCompactor.stats());
+        return stats;
+    }
+
+    /**
+     * Predicción sin llamar a Gemini: modelo elegido, tokens estimados del
+     * prompt, límites del modelo y {@code maxTokens} efectivo.
+     */
+    public PromptPreflight.Result estimate(ChatRequest chatRequest) {
+        Integer maxTokens = chatRequest.getMaxTokens() != null ?
+                chatRequest.getMaxTokens() : defaultMaxTokens;
+        long promptTokens = tokenEstimator.estimate(chatRequest.getMessage());
+        List<String> plan = modelRouter.route(promptTokens);
+        return promptPreflight.check(plan.getFirst(), promptTokens, maxTokens);
+    }
+
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(responseCache.stats());
+        stats.put("semantic", semanticCache.stats());
+        return stats;
+    }
+
+    public Map<String, Object> coalescingStats() {
+        return requestCoalescer.stats();
+    }
+
+    public Map<String, Object> concurrencyStats() {
+        return concurrencyLimiter.stats();
+    }
+
+    public Map<String, Object> quotaStats() {
+        return quotaScheduler.stats();
+    }
+
+    public Map<String, Object> overloadStats() {
+        return Map.of(
+                "adaptiveLimit", adaptiveLimiter.stats(),
+                "circuitBreaker", circuitBreaker.stats(),
+                "hedging", hedgePolicy.stats(),
+                "latency", latencyTracker.stats(),
+                "routing", modelRouter.stats()
+        );
+    }
+
+    /**
+     * Llamada real al modelo. Se ejecuta una sola vez por grupo de peticiones
+     * idénticas en vuelo; el resultado se comparte y se guarda en caché. El
+     * modelo lo elige {@link ModelRouter}, con respaldo si falla.
+     */
+    private ChatResponse callModel(PromptKey key, String message, long promptTokens, Integer maxTokens,
+                                   List<String> plan, Priority priority, String caller) {
+        long startTime = System.nanoTime();
+
+        ModelCall call = modelRouter.call(plan, model -> new ModelCall(model, geminiGateway.call(model,
+                buildPrompt(message, model, promptPreflight.forModel(key, model, promptTokens, maxTokens)),
+                priority)));
+        ChatResponse response = toChatResponse(call, elapsedMs(startTime));
+        usageAccountant.record(call.model(), caller, response.getPromptTokens(), response.getCompletionTokens());
+
+        storeInCache(promptPreflight.forModel(key, call.model(), promptTokens, maxTokens), response);
+        return response;
+    }
+
+    private static ChatResponse toChatResponse(ModelCall call, long elapsedMs) {
+        var aiResponse = call.response();
+
+        Integer totalTokens = null;
+        Integer promptTokens = null;
+        Integer completionTokens = null;
+
+        if (aiResponse.getMetadata().getUsage() != null) {
+            Usage usage = aiResponse.getMetadata().getUsage();
+            totalTokens = usage.getTotalTokens();
+            promptTokens = usage.getPromptTokens();
+            completionTokens = usage.getCompletionTokens();
+
+            log.info("Tokens usados - Prompt: {}, Completion: {}, Total: {}",
+                    promptTokens, completionTokens, totalTokens);
+        }
+
+        log.info("Respuesta recibida en {} ms", elapsedMs);
+
+        return ChatResponse.builder()
+                .response(aiResponse.getResult().getOutput().getText())
+                .model(call.model())
+                .tokensUsed(totalTokens)
+                .promptTokens(promptTokens)
+                .completionTokens(completionTokens)
+                .responseTimeMs(elapsedMs)
+                .build();
+    }
+
+    static Prompt buildPrompt(String message, String model, PromptKey key) {
+        return new Prompt(message, options(model, key));
+    }
+
+    static Prompt buildPrompt(List<Message> messages, String model, PromptKey key) {
+        return new Prompt(messages, options(model, key));
+    }
+
+    private static GoogleGenAiChatOptions options(String model, PromptKey key) {
+        return GoogleGenAiChatOptions.builder()
+                .model(model)
+                .temperature(key.temperature())
+                .maxOutputTokens(key.maxTokens())
+                .build();
+    }
+
+    private record ModelCall(String model, org.springframework.ai.chat.model.ChatResponse response) {}
+
+    private ChatResponse lookupCache(PromptKey key, long startTime) {
+        ChatResponse cached = responseCache.isCacheable(key) ? responseCache.get(key) : null;
+        if (cached == null) {
+            cached = semanticCache.get(key);
+        }
+        if (cached != null) {
+            log.info("Respuesta servida desde caché");
+            cached.setResponseTimeMs(elapsedMs(startTime));
+        }
+        return cached;
+    }
+
+    private void storeInCache(PromptKey key, ChatResponse response) {
+        if (response.getResponse() != null) {
+            responseCache.put(key, response);
+            semanticCache.put(key, response);
+        }
+    }
+
     public Flux<String> streamChat(String message) {
+        return streamEvents(message)
+                .filter(StreamRegistry.StreamEvent::isText)
+                .map(event -> (String) event.data());
+    }
+
+    /**
+     * Texto del modelo agrupado por {@link ChunkCoalescer} y, al final, un
+     * evento {@code usage} con tokens, motivo de fin y tiempo total.
+     */
+    private Flux<StreamRegistry.StreamEvent> streamEvents(String message) {
+        long startTime = System.nanoTime();
+        String caller = UsageAccountant.currentCaller();
         try {
-            var prompt = new Prompt(message);
-            return chatModel.stream(prompt)
-                    .mapNotNull(response -> response.getResult().getOutput().getText())
+            long promptTokens = tokenEstimator.estimate(message);
+            List<String> plan = modelRouter.route(promptTokens);
+            var preflight = promptPreflight.validate(plan.getFirst(), promptTokens, defaultMaxTokens);
+            PromptKey key = PromptKey.of(message, plan.getFirst(), defaultTemperature, preflight.maxTokens());
+            return modelRouter.flux(plan, model -> {
+                        StreamAccumulator usage = StreamAccumulator.metadataOnly();
+                        StringBuilder answer = new StringBuilder();
+                        PromptKey attempt = promptPreflight.forModel(key, model, promptTokens, defaultMaxTokens);
+                        Flux<String> text = geminiGateway.stream(model, buildPrompt(message, model, attempt))
+                                .doOnNext(usage::append)
+                                .mapNotNull(response -> response.getResult().getOutput().getText());
+                        return chunkCoalescer.coalesce(text)
+                                .doOnNext(answer::append)
+                                .map(StreamRegistry.StreamEvent::text)
+                                .concatWith(Mono.fromSupplier(() -> {
+                                    ChatResponse summary = usage.toChatResponse(model, elapsedMs(startTime));
+                                    usageAccountant.record(model, caller,
+                                            summary.getPromptTokens(), summary.getCompletionTokens());
+                                    auditLog.record(AuditRecord.of(AuditRecord.STREAM, AuditRecord.OK, caller,
+                                            message, null, summary, answer.toString()));
+                                    return StreamRegistry.StreamEvent.of(USAGE_EVENT, summary);
+                                }));
+                    })
                     .onErrorResume(e -> {
                         log.error("Error en streamChat: ", e);
-                        return Flux.just(ERROR_PREFIX + (e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN));
+                        auditLog.record(AuditRecord.error(AuditRecord.STREAM, caller, message, null, modelName, e,
+                                elapsedMs(startTime)));
+                        return Flux.just(StreamRegistry.StreamEvent.text(
+                                ERROR_PREFIX + (e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN)));
                     });
         } catch (Exception e) {
             log.error("Error al iniciar streamChat: ", e);
-            return Flux.just(ERROR_PREFIX + (e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN));
+            return Flux.just(StreamRegistry.StreamEvent.text(
+                    ERROR_PREFIX + (e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN)));
         }
     }
+
+    /**
+     * Streaming reanudable: con {@code lastEventId} de una generación todavía
+     * disponible se continúa desde ahí; si no, se genera de nuevo.
+     */
+    public Flux<StreamRegistry.StreamEvent> resumableStream(String message, String lastEventId) {
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            var resumed = streamRegistry.resume(lastEventId);
+            if (resumed.isPresent()) {
+                log.info("Reanudando stream desde {}", lastEventId);
+                return resumed.get();
+            }
+        }
+        return streamRegistry.start(streamEvents(message));
+    }
+
+    /** Otro cliente más sobre una generación en curso. */
+    public Optional<Flux<StreamRegistry.StreamEvent>> attachStream(String streamId) {
+        return streamRegistry.attach(streamId);
+    }
+
+    public Map<String, Object> streamStats() {
+        return streamRegistry.stats();
+    }
+
+    public Map<String, Object> auditStats() {
+        return auditLog.stats();
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
 }
@@ -0,0 +1,128 @@
+package com.keniding.springia.chat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Agrupa fragmentos de texto de un stream para no hacer un flush (y una
+ * llamada al sistema) por cada trocito que manda Gemini. El primer fragmento
+ * sale en el acto, así que la latencia hasta el primer token no cambia; el
+ * resto se junta hasta {@code max-chars} caracteres o hasta que pasa
+ * {@code window} desde el primero pendiente. Con {@code window=0} no agrupa.
+ */
+@Component
+public class ChunkCoalescer {
+
+    @Value("${chat.stream.coalesce.window:20ms}")
+    private Duration window;
+
+    @Value("${chat.stream.coalesce.max-chars:256}")
+    private int maxChars;
+
+    public Flux<String> coalesce(Flux<String> fragments) {
+        if (window.isZero()) {
+            return fragments;
+        }
+        return Flux.create(sink -> {
+            Buffer buffer = new Buffer(sink);
+            Disposable upstream = fragments.subscribe(buffer::onNext, buffer::onError, buffer::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                buffer.cancelTimer();
+            });
+        });
+    }
+
+    private final class Buffer {
+        private final FluxSink<String> sink;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StringBuilder pending = new StringBuilder();
+        private boolean first = true;
+        private Disposable timer;
+
+        Buffer(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        void onNext(String fragment) {
+            lock.lock();
+            try {
+                if (first) {
+                    first = false;
+                    sink.next(fragment);
+                    return;
+                }
+                pending.append(fragment);
+                if (pending.length() >= maxChars) {
+                    flush();
+                } else if (timer == null) {
+                    timer = Schedulers.parallel().schedule(this::onTimer, window.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onError(Throwable e) {
+            lock.lock();
+            try {
+                flush();
+                sink.error(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onComplete() {
+            lock.lock();
+            try {
+                flush();
+                sink.complete();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancelTimer() {
+            lock.lock();
+            try {
+                if (timer != null) {
+                    timer.dispose();
+                    timer = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onTimer() {
+            lock.lock();
+            try {
+                timer = null;
+                flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Requiere el cerrojo. */
+        private void flush() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            if (!pending.isEmpty()) {
+                sink.next(pending.toString());
+                pending.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.ConversationStore.Conversation;
+import com.keniding.springia.chat.service.ConversationStore.Turn;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.google.genai.GoogleGenAiChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compactación incremental de conversaciones: cuando el contexto guardado
+ * supera el presupuesto de tokens, los turnos antiguos se funden con el
+ * resumen previo en una llamada de baja prioridad y en segundo plano, de modo
+ * que el turno del usuario no espera al resumen.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationCompactor {
+
+    private static final String INSTRUCTIONS = """
+            Resume la conversación para que un asistente pueda continuarla. \
+            Conserva hechos, decisiones, datos concretos y preguntas pendientes. \
+            Escribe en el idioma de la conversación, de forma compacta y sin preámbulos.""";
+
+    /** Los resúmenes se cargan aparte: no los pide ningún cliente directamente. */
+    private static final String USAGE_CALLER = "internal:session-compaction";
+
+    private final GeminiGateway geminiGateway;
+    private final TokenEstimator tokenEstimator;
+    private final ExecutorService chatUpstreamExecutor;
+    private final UsageAccountant usageAccountant;
+
+    @Value("${chat.session.context-token-budget:4000}")
+    private long contextTokenBudget;
+
+    @Value("${chat.session.keep-recent-turns:4}")
+    private int keepRecentTurns;
+
+    @Value("${chat.session.summary-model:${spring.ai.google.genai.chat.options.model:gemini-2.5-flash}}")
+    private String summaryModel;
+
+    @Value("${chat.session.summary-max-tokens:512}")
+    private int summaryMaxTokens;
+
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder foldedTurns = new LongAdder();
+
+    /**
+     * Lanza la compactación si la conversación se ha pasado del presupuesto.
+     * No bloquea; si ya hay una en curso no hace nada.
+     */
+    public void compactIfNeeded(Conversation conversation) {
+        List<Turn> toFold = conversation.beginCompaction(contextTokenBudget, keepRecentTurns);
+        if (toFold.isEmpty()) {
+            return;
+        }
+        chatUpstreamExecutor.execute(() -> compact(conversation, toFold));
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "contextTokenBudget", contextTokenBudget,
+                "compactions", compactions.sum(),
+                "failures", failures.sum(),
+                "foldedTurns", foldedTurns.sum()
+        );
+    }
+
+    private void compact(Conversation conversation, List<Turn> toFold) {
+        try {
+            String summary = summarize(conversation.summary(), toFold);
+            conversation.finishCompaction(toFold.size(), summary, tokenEstimator.estimate(summary));
+            compactions.increment();
+            foldedTurns.add(toFold.size());
+            log.debug("Sesión {}: {} turnos compactados", conversation.id(), toFold.size());
+        } catch (Exception e) {
+            // La conversación sigue funcionando; el tope de turnos evita que crezca sin límite.
+            failures.increment();
+            conversation.abortCompaction();
+            log.warn("No se pudo compactar la sesión {}: {}", conversation.id(), e.getMessage());
+        }
+    }
+
+    private String summarize(String previousSummary, List<Turn> turns) {
+        StringBuilder transcript = new StringBuilder();
+        if (previousSummary != null) {
+            transcript.append("Resumen anterior:\n").append(previousSummary).append("\n\n");
+        }
+        transcript.append("Turnos nuevos:\n");
+        for (Turn turn : turns) {
+            transcript.append("Usuario: ").append(turn.user()).append('\n');
+            transcript.append("Asistente: ").append(turn.assistant()).append('\n');
+        }
+
+        var options = GoogleGenAiChatOptions.builder()
+                .model(summaryModel)
+                .temperature(0.2)
+                .maxOutputTokens(summaryMaxTokens)
+                .build();
+        Prompt prompt = new Prompt(List.of(new SystemMessage(INSTRUCTIONS), new UserMessage(transcript.toString())), options);
+
+        var response = geminiGateway.call(summaryModel, prompt, Priority.LOW);
+        Usage usage = response.getMetadata().getUsage();
+        if (usage != null) {
+            usageAccountant.record(summaryModel, USAGE_CALLER, usage.getPromptTokens(), usage.getCompletionTokens());
+        }
+
+        String summary = response.getResult().getOutput().getText();
+        if (summary == null || summary.isBlank()) {
+            throw new IllegalStateException("Resumen vacío");
+        }
+        return summary.strip();
+    }
+}
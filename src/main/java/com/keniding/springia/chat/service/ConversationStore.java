@@ -0,0 +1,279 @@
+package com.keniding.springia.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conversaciones guardadas en el servidor, indexadas por id de sesión.
+ * <p>
+ * Los ids los genera el servidor al crear la sesión y cada conversación
+ * pertenece al llamante ({@code X-Caller-Id}) que la creó: un id ajeno o
+ * inventado se trata igual que uno inexistente.
+ * <p>
+ * Cada conversación mantiene un resumen de los turnos antiguos y una
+ * ventana con los turnos recientes. Memoria acotada: máximo de sesiones
+ * (se desaloja la menos usada) y desalojo de las inactivas.
+ */
+@Slf4j
+@Component
+public class ConversationStore {
+
+    @Value("${chat.session.max-sessions:10000}")
+    private int maxSessions;
+
+    @Value("${chat.session.idle-timeout:30m}")
+    private Duration idleTimeout;
+
+    @Value("${chat.session.max-turns:50}")
+    private int maxTurns;
+
+    /** En orden de acceso: la cabeza es siempre la sesión usada hace más tiempo. */
+    private final LinkedHashMap<String, Conversation> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evictedIdle = new LongAdder();
+    private final LongAdder evictedCapacity = new LongAdder();
+
+    /**
+     * Crea una conversación vacía para {@code owner} con un id aleatorio.
+     */
+    public Conversation create(String owner) {
+        Conversation conversation = new Conversation(UUID.randomUUID().toString(), owner, maxTurns);
+        lock.lock();
+        try {
+            evictIdle(System.nanoTime());
+            sessions.put(conversation.id, conversation);
+            evictLeastRecentlyUsed();
+        } finally {
+            lock.unlock();
+        }
+        created.increment();
+        return conversation;
+    }
+
+    /**
+     * Devuelve la conversación de la sesión si existe y es de {@code owner}.
+     */
+    public Conversation open(String owner, String sessionId) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            evictIdle(now);
+            Conversation conversation = sessions.get(sessionId);
+            if (conversation == null || !conversation.owner.equals(owner)) {
+                throw new SessionNotFoundException(sessionId);
+            }
+            conversation.lastAccessNanos = now;
+            return conversation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean remove(String owner, String sessionId) {
+        lock.lock();
+        try {
+            Conversation conversation = sessions.get(sessionId);
+            return conversation != null && conversation.owner.equals(owner)
+                    && sessions.remove(sessionId, conversation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int active;
+        lock.lock();
+        try {
+            active = sessions.size();
+        } finally {
+            lock.unlock();
+        }
+        return Map.of(
+                "active", active,
+                "maxSessions", maxSessions,
+                "created", created.sum(),
+                "evictedIdle", evictedIdle.sum(),
+                "evictedCapacity", evictedCapacity.sum()
+        );
+    }
+
+    /**
+     * Quita las inactivas desde la cabeza y para en la primera que no lo
+     * está: solo recorre las que caducan. Requiere el cerrojo.
+     */
+    private void evictIdle(long now) {
+        long timeout = idleTimeout.toNanos();
+        Iterator<Conversation> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Conversation oldest = iterator.next();
+            if (now - oldest.lastAccessNanos <= timeout) {
+                return;
+            }
+            iterator.remove();
+            evictedIdle.increment();
+        }
+    }
+
+    /** Por encima del máximo se desaloja la cabeza, la menos usada. Requiere el cerrojo. */
+    private void evictLeastRecentlyUsed() {
+        Iterator<Conversation> iterator = sessions.values().iterator();
+        while (sessions.size() > maxSessions && iterator.hasNext()) {
+            Conversation oldest = iterator.next();
+            iterator.remove();
+            evictedCapacity.increment();
+            log.debug("Sesión {} desalojada por capacidad", oldest.id);
+        }
+    }
+
+    /** Sesión inexistente, caducada o de otro llamante. */
+    public static class SessionNotFoundException extends RuntimeException {
+        public SessionNotFoundException(String sessionId) {
+            super("Sesión no encontrada: " + sessionId);
+        }
+    }
+
+    /** Turno completo: mensaje del usuario, respuesta y sus tokens estimados. */
+    public record Turn(String user, String assistant, long tokens) {}
+
+    /**
+     * Estado de una conversación. Los turnos de una misma sesión se
+     * serializan con {@link #lock()}; la compactación trabaja sobre una copia
+     * y solo toma el cerrojo para aplicar el resultado.
+     */
+    public static final class Conversation {
+        private final String id;
+        private final String owner;
+        private final int maxTurns;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+
+        private String summary;
+        private long summaryTokens;
+        private long turnTokens;
+        private boolean compacting;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        private Conversation(String id, String owner, int maxTurns) {
+            this.id = id;
+            this.owner = owner;
+            this.maxTurns = maxTurns;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public void lock() {
+            lock.lock();
+        }
+
+        public void unlock() {
+            lock.unlock();
+        }
+
+        /**
+         * Mensajes para el modelo: resumen (si lo hay), ventana de turnos
+         * recientes y el mensaje nuevo. Requiere el cerrojo.
+         */
+        public List<Message> messages(String userMessage) {
+            List<Message> messages = new ArrayList<>(turns.size() * 2 + 2);
+            if (summary != null) {
+                messages.add(new SystemMessage("Resumen de la conversación hasta ahora:\n" + summary));
+            }
+            for (Turn turn : turns) {
+                messages.add(new UserMessage(turn.user()));
+                messages.add(new AssistantMessage(turn.assistant()));
+            }
+            messages.add(new UserMessage(userMessage));
+            return messages;
+        }
+
+        /** Tokens estimados del contexto guardado (resumen + ventana). */
+        public long contextTokens() {
+            return summaryTokens + turnTokens;
+        }
+
+        /** Añade un turno. Requiere el cerrojo. */
+        public void append(Turn turn) {
+            turns.addLast(turn);
+            turnTokens += turn.tokens();
+            // Tope duro por si la compactación no da abasto o falla.
+            while (turns.size() > maxTurns && !compacting) {
+                turnTokens -= turns.removeFirst().tokens();
+            }
+        }
+
+        /**
+         * Si el contexto supera el presupuesto, marca la conversación como en
+         * compactación y devuelve los turnos antiguos a resumir (todos menos
+         * los {@code keepRecent} últimos). Lista vacía si no hace falta.
+         */
+        List<Turn> beginCompaction(long tokenBudget, int keepRecent) {
+            lock.lock();
+            try {
+                if (compacting || contextTokens() <= tokenBudget || turns.size() <= keepRecent) {
+                    return List.of();
+                }
+                compacting = true;
+                return new ArrayList<>(turns).subList(0, turns.size() - keepRecent);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String summary() {
+            lock.lock();
+            try {
+                return summary;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Sustituye los {@code folded} turnos más antiguos por el nuevo resumen.
+         * Mientras se compactaba solo se han añadido turnos al final, así que
+         * los resumidos siguen estando en cabeza.
+         */
+        void finishCompaction(int folded, String newSummary, long newSummaryTokens) {
+            lock.lock();
+            try {
+                for (int i = 0; i < folded && !turns.isEmpty(); i++) {
+                    turnTokens -= turns.removeFirst().tokens();
+                }
+                summary = newSummary;
+                summaryTokens = newSummaryTokens;
+                compacting = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void abortCompaction() {
+            lock.lock();
+            try {
+                compacting = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.keniding.springia.chat.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Trocea un texto leído de un {@link Reader} en fragmentos de como mucho
+ * {@code maxTokens} tokens estimados, sin cargar el texto entero en memoria:
+ * solo se lee lo necesario para producir el siguiente fragmento.
+ * <p>
+ * Se corta preferentemente en un párrafo, luego en una línea, una frase o un
+ * espacio, siempre en la segunda mitad del fragmento para no dejar trozos
+ * demasiado pequeños.
+ * <p>
+ * La estimación de lo pendiente se lleva sumando la de cada bloque leído, que
+ * es una cota superior (una palabra partida entre dos bloques cuenta de más);
+ * solo al pasar del presupuesto se recalcula sobre el texto pendiente.
+ */
+class DocumentChunker implements Iterator<String> {
+
+    private static final int BLOCK_CHARS = 4096;
+    private static final String[] BOUNDARIES = {"\n\n", "\n", ". ", " "};
+
+    private final Reader reader;
+    private final TokenEstimator tokenEstimator;
+    private final long maxTokens;
+    private final char[] block = new char[BLOCK_CHARS];
+    private final StringBuilder pending = new StringBuilder();
+
+    private long pendingTokens;
+    private boolean eof;
+    private String next;
+
+    DocumentChunker(Reader reader, TokenEstimator tokenEstimator, long maxTokens) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("maxTokens debe ser positivo");
+        }
+        this.reader = reader;
+        this.tokenEstimator = tokenEstimator;
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String chunk = next;
+        next = null;
+        return chunk;
+    }
+
+    private String advance() {
+        while (true) {
+            if (pendingTokens > maxTokens) {
+                pendingTokens = tokenEstimator.estimate(pending);
+            }
+            if (pendingTokens > maxTokens) {
+                String chunk = cut(pendingTokens);
+                pendingTokens = tokenEstimator.estimate(pending);
+                if (!chunk.isBlank()) {
+                    return chunk;
+                }
+                continue;
+            }
+            if (eof) {
+                if (pending.toString().isBlank()) {
+                    return null;
+                }
+                String chunk = pending.toString();
+                pending.setLength(0);
+                pendingTokens = 0;
+                return chunk;
+            }
+            read();
+        }
+    }
+
+    private void read() {
+        try {
+            int read = reader.read(block);
+            if (read == -1) {
+                eof = true;
+            } else {
+                pending.append(block, 0, read);
+                pendingTokens += tokenEstimator.estimate(CharBuffer.wrap(block, 0, read));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo el documento", e);
+        }
+    }
+
+    /**
+     * Corta un prefijo de {@code pending} que quepa en el presupuesto. La
+     * posición inicial sale de la densidad media de tokens; si el prefijo
+     * aún se pasa, se acorta.
+     */
+    private String cut(long pendingTokens) {
+        int target = (int) Math.max(1, pending.length() * maxTokens / pendingTokens);
+        while (true) {
+            int cut = boundary(target);
+            String chunk = pending.substring(0, cut);
+            if (cut <= 1 || tokenEstimator.estimate(chunk) <= maxTokens) {
+                pending.delete(0, cut);
+                return chunk;
+            }
+            target = Math.max(1, cut * 9 / 10);
+        }
+    }
+
+    private int boundary(int target) {
+        for (String separator : BOUNDARIES) {
+            int index = pending.lastIndexOf(separator, target - separator.length());
+            if (index >= target / 2) {
+                return index + separator.length();
+            }
+        }
+        // Sin separador: corte duro, sin partir un par sustituto.
+        if (target < pending.length() && Character.isLowSurrogate(pending.charAt(target)) && target > 1) {
+            return target - 1;
+        }
+        return target;
+    }
+}
@@ -0,0 +1,209 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Documentos más grandes que el contexto del modelo, en map-reduce.
+ * <p>
+ * Si el documento cabe en un solo fragmento se hace una llamada normal, con
+ * la instrucción, el texto y el {@code maxTokens} pedido.
+ * <p>
+ * El texto se trocea a medida que se lee ({@link DocumentChunker}); cada
+ * fragmento se procesa con la instrucción del usuario en paralelo acotado, y
+ * las respuestas parciales se combinan por grupos que caben en el
+ * presupuesto, nivel a nivel, hasta quedar una. Todas las llamadas pasan por
+ * {@link ChatService}, así que respetan cuotas, caché y contabilidad.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocumentService {
+
+    private static final String SINGLE_PROMPT = """
+            %s
+
+            %s""";
+
+    private static final String MAP_PROMPT = """
+            %s
+
+            Lo que sigue es solo la parte %d de un documento más largo. Responde \
+            únicamente con lo que aporta esta parte; si no contiene nada relevante, \
+            responde "Sin información relevante".
+
+            --- PARTE %d ---
+            %s""";
+
+    private static final String REDUCE_PROMPT = """
+            %s
+
+            Las siguientes son respuestas parciales a esa instrucción, obtenidas de \
+            partes consecutivas de un mismo documento. Combínalas en una sola \
+            respuesta coherente, sin repetir información y descartando las partes \
+            sin información relevante.
+
+            %s""";
+
+    private final ChatService chatService;
+    private final TokenEstimator tokenEstimator;
+    private final ExecutorService chatUpstreamExecutor;
+
+    @Value("${chat.documents.chunk-tokens:8000}")
+    private long chunkTokens;
+
+    @Value("${chat.documents.reduce-tokens:8000}")
+    private long reduceTokens;
+
+    @Value("${chat.documents.partial-max-tokens:1024}")
+    private int partialMaxTokens;
+
+    @Value("${chat.documents.default-parallelism:4}")
+    private int defaultParallelism;
+
+    @Value("${chat.documents.max-parallelism:16}")
+    private int maxParallelism;
+
+    @Value("${chat.documents.max-chunks:500}")
+    private int maxChunks;
+
+    public ChatResponse process(Reader document, String instruction, Integer parallelism, Integer maxTokens,
+                                String caller) {
+        long startTime = System.nanoTime();
+        int concurrency = Math.clamp(parallelism != null ? parallelism : defaultParallelism, 1, maxParallelism);
+        Scheduler scheduler = Schedulers.fromExecutorService(chatUpstreamExecutor);
+        Usage usage = new Usage();
+
+        DocumentChunker chunker = new DocumentChunker(document, tokenEstimator, chunkTokens);
+        if (!chunker.hasNext()) {
+            throw new IllegalArgumentException("El documento está vacío");
+        }
+        String first = chunker.next();
+        if (!chunker.hasNext()) {
+            return summarize(call(SINGLE_PROMPT.formatted(instruction, first), maxTokens, caller, usage),
+                    usage, startTime);
+        }
+
+        // flatMapSequential con prefetch 1: solo se leen del cuerpo los fragmentos que se van a procesar.
+        List<ChatResponse> partials = Flux.concat(Flux.just(first), Flux.fromIterable(() -> chunker))
+                .index()
+                .doOnNext(indexed -> {
+                    if (indexed.getT1() >= maxChunks) {
+                        throw new IllegalArgumentException(
+                                "El documento supera el máximo de " + maxChunks + " fragmentos");
+                    }
+                })
+                .flatMapSequential(indexed -> Mono.fromCallable(() -> {
+                            long part = indexed.getT1() + 1;
+                            String prompt = MAP_PROMPT.formatted(instruction, part, part, indexed.getT2());
+                            return call(prompt, partialMaxTokens, caller, usage);
+                        }).subscribeOn(scheduler),
+                        concurrency, 1)
+                .collectList()
+                .block();
+
+        log.info("Documento procesado en {} fragmentos", partials.size());
+
+        ChatResponse result = reduce(partials, instruction, concurrency, maxTokens, caller, usage, scheduler);
+        return summarize(result, usage, startTime);
+    }
+
+    /** Respuesta final con el uso sumado de todas las llamadas. */
+    private static ChatResponse summarize(ChatResponse result, Usage usage, long startTime) {
+        return ChatResponse.builder()
+                .response(result.getResponse())
+                .model(result.getModel())
+                .tokensUsed((int) (usage.prompt.sum() + usage.completion.sum()))
+                .promptTokens((int) usage.prompt.sum())
+                .completionTokens((int) usage.completion.sum())
+                .finishReason(result.getFinishReason())
+                .responseTimeMs((System.nanoTime() - startTime) / 1_000_000)
+                .build();
+    }
+
+    /**
+     * Combina las respuestas parciales por niveles: cada grupo cabe en
+     * {@code reduce-tokens} y los grupos de un nivel se reducen en paralelo.
+     */
+    private ChatResponse reduce(List<ChatResponse> partials, String instruction, int concurrency, Integer maxTokens,
+                                String caller, Usage usage, Scheduler scheduler) {
+        List<ChatResponse> level = partials;
+        int depth = 0;
+        while (level.size() > 1) {
+            List<List<ChatResponse>> groups = group(level);
+            boolean last = groups.size() == 1;
+            Integer levelMaxTokens = last ? maxTokens : Integer.valueOf(partialMaxTokens);
+            depth++;
+            log.debug("Reducción nivel {}: {} respuestas en {} grupos", depth, level.size(), groups.size());
+
+            level = Flux.fromIterable(groups)
+                    .flatMapSequential(group -> Mono.fromCallable(() -> group.size() == 1
+                                    ? group.getFirst()
+                                    : call(REDUCE_PROMPT.formatted(instruction, join(group)), levelMaxTokens, caller, usage))
+                            .subscribeOn(scheduler), concurrency, 1)
+                    .collectList()
+                    .block();
+        }
+        return level.getFirst();
+    }
+
+    /** Agrupa respuestas consecutivas sin pasar del presupuesto; al menos dos por grupo para que avance. */
+    private List<List<ChatResponse>> group(List<ChatResponse> responses) {
+        List<List<ChatResponse>> groups = new ArrayList<>();
+        List<ChatResponse> current = new ArrayList<>();
+        long currentTokens = 0;
+        for (ChatResponse response : responses) {
+            long tokens = tokenEstimator.estimate(response.getResponse());
+            if (current.size() >= 2 && currentTokens + tokens > reduceTokens) {
+                groups.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(response);
+            currentTokens += tokens;
+        }
+        groups.add(current);
+        return groups;
+    }
+
+    private static String join(List<ChatResponse> group) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < group.size(); i++) {
+            joined.append("--- RESPUESTA ").append(i + 1).append(" ---\n")
+                    .append(group.get(i).getResponse()).append("\n\n");
+        }
+        return joined.toString();
+    }
+
+    private ChatResponse call(String prompt, Integer maxTokens, String caller, Usage usage) {
+        ChatRequest request = new ChatRequest();
+        request.setMessage(prompt);
+        request.setMaxTokens(maxTokens);
+        ChatResponse response = chatService.execute(request, Priority.NORMAL, caller);
+        if (!Boolean.TRUE.equals(response.getCached())) {
+            usage.prompt.add(response.getPromptTokens() != null ? response.getPromptTokens() : 0);
+            usage.completion.add(response.getCompletionTokens() != null ? response.getCompletionTokens() : 0);
+        }
+        return response;
+    }
+
+    private static final class Usage {
+        final LongAdder prompt = new LongAdder();
+        final LongAdder completion = new LongAdder();
+    }
+}
@@ -0,0 +1,453 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.env.Environment;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ChatModel} que reparte las llamadas entre varias claves de API de
+ * Gemini, cada una con su propio cliente.
+ * <p>
+ * Para cada llamada se elige la clave con menor coste estimado: latencia
+ * reciente (media móvil) por llamadas en curso, dividido por la fracción de
+ * cuota que le queda en el último minuto. Un 429 expulsa la clave durante un
+ * enfriamiento exponencial y la llamada se repite con otra; solo si no queda
+ * ninguna se propaga el 429. Con una sola clave no hay expulsiones y el
+ * comportamiento es el de siempre.
+ * <p>
+ * Los límites por clave son los de {@code chat.quota.*}.
+ */
+@Slf4j
+public class GeminiClientPool implements ChatModel {
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final double LATENCY_ALPHA = 0.2;
+    private static final double MIN_REMAINING = 0.05;
+
+    private final List<Member> members;
+    private final Environment environment;
+    private final String defaultModel;
+    private final Duration ejectInitial;
+    private final Duration ejectMax;
+    private final Map<String, long[]> limits = new HashMap<>();
+    private final ReentrantLock limitsLock = new ReentrantLock();
+
+    /**
+     * Clave de API ya envuelta en su modelo. {@code hint} son los últimos
+     * caracteres de la clave; {@code warmUp} abre la conexión sin gastar cuota.
+     */
+    public record PooledKey(String id, String hint, ChatModel model, Runnable warmUp) {
+        public PooledKey(String id, String hint, ChatModel model) {
+            this(id, hint, model, () -> {});
+        }
+    }
+
+    public GeminiClientPool(List<PooledKey> keys, Environment environment, MeterRegistry meterRegistry,
+                            String defaultModel, Duration ejectInitial, Duration ejectMax) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("El pool de Gemini necesita al menos una clave");
+        }
+        this.members = keys.stream().map(Member::new).toList();
+        this.environment = environment;
+        this.defaultModel = defaultModel;
+        this.ejectInitial = ejectInitial;
+        this.ejectMax = ejectMax;
+
+        for (Member member : members) {
+            Gauge.builder("chat.gemini.key.in.flight", member.inFlight, AtomicInteger::get)
+                    .description("Llamadas en curso por clave de API")
+                    .tag("key", member.id)
+                    .register(meterRegistry);
+            Gauge.builder("chat.gemini.key.ejected", member, m -> m.cooldownNanos(System.nanoTime()) > 0 ? 1 : 0)
+                    .description("1 si la clave está expulsada tras un 429")
+                    .tag("key", member.id)
+                    .register(meterRegistry);
+        }
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Crea los clientes y abre una conexión por clave. Los errores solo se
+     * registran: la clave se volverá a intentar con el primer uso real.
+     */
+    public void warmUp() {
+        for (Member member : members) {
+            long startNanos = System.nanoTime();
+            try {
+                member.warmUp.run();
+                log.debug("Clave {} lista en {} ms", member.id,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            } catch (RuntimeException e) {
+                log.warn("No se pudo calentar la clave {}: {}", member.id, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return members.getFirst().model.getDefaultOptions();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String model = modelOf(prompt);
+        Set<Member> tried = new HashSet<>();
+        while (true) {
+            Member member = select(model, tried);
+            tried.add(member);
+            member.begin(model);
+            long startNanos = System.nanoTime();
+            try {
+                ChatResponse response = member.model.call(prompt);
+                member.onSuccess(System.nanoTime() - startNanos);
+                member.recordTokens(model, totalTokens(response.getMetadata().getUsage()));
+                return response;
+            } catch (RuntimeException e) {
+                UpstreamError cause = UpstreamError.classify(e);
+                onError(member, cause);
+                if (cause != UpstreamError.RATE_LIMITED || !hasCandidate(tried)) {
+                    throw e;
+                }
+                log.warn("429 con la clave {}: se repite con otra", member.id);
+            } finally {
+                member.end();
+            }
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return stream(prompt, modelOf(prompt), new HashSet<>());
+    }
+
+    /**
+     * Solo se cambia de clave si el 429 llega antes del primer fragmento;
+     * a mitad de respuesta el error se propaga tal cual.
+     */
+    private Flux<ChatResponse> stream(Prompt prompt, String model, Set<Member> tried) {
+        return Flux.defer(() -> {
+            Member member = select(model, tried);
+            tried.add(member);
+            member.begin(model);
+            long startNanos = System.nanoTime();
+            AtomicBoolean emitted = new AtomicBoolean();
+            AtomicInteger tokens = new AtomicInteger();
+            return member.model.stream(prompt)
+                    .doOnNext(chunk -> {
+                        if (emitted.compareAndSet(false, true)) {
+                            // En streaming la latencia comparable es la del primer fragmento.
+                            member.onSuccess(System.nanoTime() - startNanos);
+                        }
+                        Integer total = totalTokens(chunk.getMetadata().getUsage());
+                        if (total != null) {
+                            tokens.set(total);
+                        }
+                    })
+                    .doOnComplete(() -> member.recordTokens(model, tokens.get()))
+                    .doOnTerminate(member::end)
+                    .doOnCancel(member::end)
+                    .onErrorResume(e -> {
+                        UpstreamError cause = UpstreamError.classify(e);
+                        onError(member, cause);
+                        if (cause == UpstreamError.RATE_LIMITED && !emitted.get() && hasCandidate(tried)) {
+                            log.warn("429 con la clave {}: el stream se abre con otra", member.id);
+                            return stream(prompt, model, tried);
+                        }
+                        return Flux.error(e);
+                    });
+        });
+    }
+
+    /**
+     * Estado de cada clave: expulsión, llamadas en curso, latencia reciente
+     * y uso de la cuota del último minuto por modelo.
+     */
+    public Map<String, Object> stats() {
+        long now = System.nanoTime();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keys", members.size());
+        for (Member member : members) {
+            stats.put(member.id, member.stats(now));
+        }
+        return stats;
+    }
+
+    private Member select(String model, Set<Member> excluded) {
+        long now = System.nanoTime();
+        long[] limit = limitsFor(model);
+        Member best = null;
+        double bestScore = Double.MAX_VALUE;
+        boolean bestExhausted = true;
+        long soonest = Long.MAX_VALUE;
+
+        for (Member member : members) {
+            if (excluded.contains(member)) {
+                continue;
+            }
+            long cooldown = member.cooldownNanos(now);
+            if (cooldown > 0) {
+                soonest = Math.min(soonest, cooldown);
+                continue;
+            }
+            double remaining = member.remaining(model, limit, now);
+            boolean exhausted = remaining <= 0;
+            // Una clave sin cuota solo se usa si todas las demás tampoco tienen.
+            double score = member.latencyNanos() * (member.inFlight.get() + 1)
+                    / Math.max(remaining, MIN_REMAINING);
+            if (best == null || (bestExhausted && !exhausted)
+                    || (exhausted == bestExhausted && score < bestScore)) {
+                best = member;
+                bestScore = score;
+                bestExhausted = exhausted;
+            }
+        }
+
+        if (best == null) {
+            throw new ServiceOverloadedException(
+                    "Todas las claves de Gemini están en enfriamiento tras un 429",
+                    Duration.ofNanos(soonest == Long.MAX_VALUE ? ejectInitial.toNanos() : soonest));
+        }
+        return best;
+    }
+
+    private boolean hasCandidate(Set<Member> excluded) {
+        long now = System.nanoTime();
+        for (Member member : members) {
+            if (!excluded.contains(member) && member.cooldownNanos(now) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onError(Member member, UpstreamError cause) {
+        member.failures.increment();
+        if (cause != UpstreamError.RATE_LIMITED) {
+            return;
+        }
+        member.rateLimited.increment();
+        if (members.size() > 1) {
+            Duration cooldown = member.eject(ejectInitial, ejectMax);
+            log.warn("Clave {} expulsada durante {} ms tras un 429", member.id, cooldown.toMillis());
+        }
+    }
+
+    /** Peticiones y tokens por minuto de una clave para el modelo dado. */
+    private long[] limitsFor(String model) {
+        limitsLock.lock();
+        try {
+            return limits.computeIfAbsent(model, m -> new long[] {
+                    environment.getProperty("chat.quota.models." + m + ".requests-per-minute", Long.class,
+                            environment.getProperty("chat.quota.default.requests-per-minute", Long.class, 60L)),
+                    environment.getProperty("chat.quota.models." + m + ".tokens-per-minute", Long.class,
+                            environment.getProperty("chat.quota.default.tokens-per-minute", Long.class, 1_000_000L))
+            });
+        } finally {
+            limitsLock.unlock();
+        }
+    }
+
+    private String modelOf(Prompt prompt) {
+        ChatOptions options = prompt.getOptions();
+        return options != null && options.getModel() != null ? options.getModel() : defaultModel;
+    }
+
+    private static Integer totalTokens(Usage usage) {
+        return usage != null ? usage.getTotalTokens() : null;
+    }
+
+    private static final class Member {
+        private final String id;
+        private final String hint;
+        private final ChatModel model;
+        private final Runnable warmUp;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, MinuteWindow> windows = new HashMap<>();
+        private double latencyEwmaNanos;
+        private long ejectedUntil;
+        private int consecutiveRateLimits;
+
+        private Member(PooledKey key) {
+            this.id = key.id();
+            this.hint = key.hint();
+            this.model = key.model();
+            this.warmUp = key.warmUp();
+        }
+
+        private void begin(String model) {
+            inFlight.incrementAndGet();
+            calls.increment();
+            lock.lock();
+            try {
+                windows.computeIfAbsent(model, _ -> new MinuteWindow()).add(System.nanoTime(), 1, 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void end() {
+            inFlight.decrementAndGet();
+        }
+
+        private void recordTokens(String model, Integer tokens) {
+            if (tokens == null || tokens <= 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                windows.computeIfAbsent(model, _ -> new MinuteWindow()).add(System.nanoTime(), 0, tokens);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onSuccess(long latencyNanos) {
+            lock.lock();
+            try {
+                latencyEwmaNanos = latencyEwmaNanos == 0
+                        ? latencyNanos
+                        : latencyEwmaNanos + LATENCY_ALPHA * (latencyNanos - latencyEwmaNanos);
+                consecutiveRateLimits = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Duration eject(Duration initial, Duration max) {
+            lock.lock();
+            try {
+                int exponent = Math.min(consecutiveRateLimits++, 20);
+                long cooldown = Math.min(max.toNanos(), initial.toNanos() << exponent);
+                ejectedUntil = System.nanoTime() + cooldown;
+                return Duration.ofNanos(cooldown);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long cooldownNanos(long now) {
+            lock.lock();
+            try {
+                return ejectedUntil - now;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Sin muestras todavía cuenta como la más rápida, para que reciba tráfico y se mida. */
+        private double latencyNanos() {
+            lock.lock();
+            try {
+                return Math.max(1, latencyEwmaNanos);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private double remaining(String model, long[] limit, long now) {
+            lock.lock();
+            try {
+                MinuteWindow window = windows.get(model);
+                return window == null ? 1.0 : window.remaining(limit, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Map<String, Object> stats(long now) {
+            lock.lock();
+            try {
+                long cooldown = ejectedUntil - now;
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("hint", hint);
+                stats.put("state", cooldown > 0 ? "ejected" : "available");
+                if (cooldown > 0) {
+                    stats.put("ejectedForMs", TimeUnit.NANOSECONDS.toMillis(cooldown));
+                }
+                stats.put("inFlight", inFlight.get());
+                stats.put("calls", calls.sum());
+                stats.put("failures", failures.sum());
+                stats.put("rateLimited", rateLimited.sum());
+                stats.put("latencyMs", TimeUnit.NANOSECONDS.toMillis((long) latencyEwmaNanos));
+                Map<String, Object> usage = new LinkedHashMap<>();
+                windows.forEach((model, window) -> usage.put(model, window.stats(now)));
+                stats.put("lastMinute", usage);
+                return stats;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Ventana deslizante aproximada de un minuto: el minuto en curso más la
+     * parte proporcional del anterior. Se accede con el lock de la clave.
+     */
+    private static final class MinuteWindow {
+        private long start = System.nanoTime();
+        private long requests;
+        private long tokens;
+        private long previousRequests;
+        private long previousTokens;
+
+        private void add(long now, long requests, long tokens) {
+            roll(now);
+            this.requests += requests;
+            this.tokens += tokens;
+        }
+
+        private double remaining(long[] limit, long now) {
+            roll(now);
+            double weight = 1.0 - (double) (now - start) / NANOS_PER_MINUTE;
+            double usedRequests = requests + previousRequests * weight;
+            double usedTokens = tokens + previousTokens * weight;
+            return Math.min(1.0 - usedRequests / limit[0], 1.0 - usedTokens / limit[1]);
+        }
+
+        private Map<String, Object> stats(long now) {
+            roll(now);
+            return Map.of("requests", requests, "tokens", tokens);
+        }
+
+        private void roll(long now) {
+            long elapsed = now - start;
+            if (elapsed < NANOS_PER_MINUTE) {
+                return;
+            }
+            boolean adjacent = elapsed < 2 * NANOS_PER_MINUTE;
+            previousRequests = adjacent ? requests : 0;
+            previousTokens = adjacent ? tokens : 0;
+            requests = 0;
+            tokens = 0;
+            start = now - elapsed % NANOS_PER_MINUTE;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.QuotaScheduler.Permit;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Punto único de salida hacia Gemini. Todas las llamadas remotas del chat
+ * pasan por aquí, en este orden: circuit breaker, límite adaptativo (que
+ * rechaza en el acto), cuota local (que espera) y tope por modelo. Las
+ * llamadas lentas se duplican según {@link HedgePolicy}; la copia pasa por
+ * los mismos límites sin esperar y, si no hay hueco, no se lanza. También se
+ * miden aquí.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GeminiGateway {
+
+    /** Llamante con el que se contabilizan los tokens de las copias perdedoras. */
+    static final String HEDGE_CALLER = "internal:hedging";
+
+    private final ChatModel chatModel;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final QuotaScheduler quotaScheduler;
+    private final ChatMetrics chatMetrics;
+    private final AdaptiveConcurrencyLimiter adaptiveLimiter;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final LatencyTracker latencyTracker;
+    private final HedgePolicy hedgePolicy;
+    private final ExecutorService chatUpstreamExecutor;
+    private final TokenEstimator tokenEstimator;
+    private final UsageAccountant usageAccountant;
+
+    public ChatResponse call(String model, Prompt prompt) {
+        return call(model, prompt, Priority.NORMAL);
+    }
+
+    public ChatResponse call(String model, Prompt prompt, Priority priority) {
+        long trial = circuitBreaker.checkAvailable(model);
+        boolean recorded = false;
+        try {
+            adaptiveLimiter.acquire();
+            long upstreamNanos = 0;
+            try {
+                Permit permit = quotaScheduler.acquire(model, tokenEstimator.estimate(prompt.getContents()), priority);
+                concurrencyLimiter.acquire(model);
+                long callStartNanos = chatMetrics.start();
+                try {
+                    ChatResponse response = callHedged(model, prompt, permit);
+                    upstreamNanos = System.nanoTime() - callStartNanos;
+                    latencyTracker.record(model, upstreamNanos);
+                    chatMetrics.recordSuccess(model, "call", callStartNanos, response);
+                    recorded = true;
+                    onSuccess(model);
+                    return response;
+                } catch (RuntimeException e) {
+                    recorded = true;
+                    onError(model, chatMetrics.recordError(model, "call", callStartNanos, e));
+                    throw e;
+                } finally {
+                    concurrencyLimiter.release(model);
+                }
+            } finally {
+                adaptiveLimiter.release(upstreamNanos, upstreamNanos > 0);
+            }
+        } finally {
+            // Rechazada en local (límite adaptativo, cuota, tope por modelo): no dice nada de Gemini.
+            if (!recorded) {
+                circuitBreaker.release(model, trial);
+            }
+        }
+    }
+
+    public Flux<ChatResponse> stream(String model, Prompt prompt) {
+        return stream(model, prompt, Priority.NORMAL);
+    }
+
+    public Flux<ChatResponse> stream(String model, Prompt prompt, Priority priority) {
+        AtomicReference<Usage> lastUsage = new AtomicReference<>();
+        AtomicBoolean recorded = new AtomicBoolean();
+        return Flux.using(
+                        () -> {
+                            long trial = circuitBreaker.checkAvailable(model);
+                            try {
+                                adaptiveLimiter.acquire();
+                            } catch (RuntimeException e) {
+                                circuitBreaker.release(model, trial);
+                                throw e;
+                            }
+                            try {
+                                Permit permit = quotaScheduler.acquire(
+                                        model, tokenEstimator.estimate(prompt.getContents()), priority);
+                                concurrencyLimiter.acquire(model);
+                                return new Lease(permit, trial);
+                            } catch (RuntimeException e) {
+                                adaptiveLimiter.release(0, false);
+                                circuitBreaker.release(model, trial);
+                                throw e;
+                            }
+                        },
+                        _ -> Flux.defer(() -> {
+                            ChatMetrics.StreamObservation observation = chatMetrics.startStream(model);
+                            return chatModel.stream(prompt)
+                                    .doOnNext(observation::onChunk)
+                                    .doOnNext(chunk -> {
+                                        Usage usage = chunk.getMetadata().getUsage();
+                                        if (usage != null && usage.getTotalTokens() != null) {
+                                            lastUsage.set(usage);
+                                        }
+                                    })
+                                    .doOnComplete(observation::onComplete)
+                                    .doOnComplete(() -> {
+                                        recorded.set(true);
+                                        onSuccess(model);
+                                    })
+                                    .doOnError(observation::onError)
+                                    .doOnError(e -> {
+                                        recorded.set(true);
+                                        onError(model, UpstreamError.classify(e));
+                                    })
+                                    .doOnCancel(observation::onCancel);
+                        }),
+                        lease -> {
+                            concurrencyLimiter.release(model);
+                            adaptiveLimiter.release(0, false);
+                            settle(lease.permit(), lastUsage.get());
+                            // Cancelado antes de terminar: el turno de prueba no se ha resuelto.
+                            if (!recorded.get()) {
+                                circuitBreaker.release(model, lease.trial());
+                            }
+                        })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Llamada con hedging: si la primera no responde antes del umbral, se
+     * lanza una copia y gana la primera respuesta correcta. La perdedora se
+     * interrumpe. Cada intento ajusta su propia reserva de cuota con el uso
+     * real, y si la perdedora llega a responder sus tokens se contabilizan
+     * como {@link #HEDGE_CALLER}.
+     */
+    private ChatResponse callHedged(String model, Prompt prompt, Permit permit) {
+        Duration threshold = hedgePolicy.threshold(model);
+        if (threshold == null) {
+            ChatResponse response = chatModel.call(prompt);
+            settle(permit, response.getMetadata().getUsage());
+            return response;
+        }
+
+        CompletableFuture<Attempt> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        Future<?> primary = submitAttempt(model, prompt, permit, null, winner, pending);
+        Future<?> hedge = null;
+        HedgeSlot slot = null;
+        try {
+            try {
+                return winner.get(threshold.toNanos(), TimeUnit.NANOSECONDS).response();
+            } catch (TimeoutException _) {
+                if (!hedgePolicy.tryHedge(model)) {
+                    return winner.get().response();
+                }
+            }
+
+            slot = acquireHedgeSlot(model, prompt);
+            if (slot == null) {
+                hedgePolicy.hedgeSkipped(model);
+                log.debug("Sin cuota o capacidad libre para duplicar la llamada a {}", model);
+                return winner.get().response();
+            }
+            log.debug("Hedging para {} tras {} ms sin respuesta", model, threshold.toMillis());
+            pending.incrementAndGet();
+            hedge = submitAttempt(model, prompt, slot.permit, slot, winner, pending);
+            Attempt result = winner.get();
+            if (result.hedged()) {
+                hedgePolicy.hedgeWon(model);
+            }
+            return result.response();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Llamada a Gemini interrumpida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+            // La copia que no llegó a arrancar devuelve aquí sus huecos y su cuota; si arrancó, lo hace ella.
+            if (slot != null && slot.claim()) {
+                slot.cancel();
+            }
+        }
+    }
+
+    /**
+     * Lanza un intento. {@code slot} es {@code null} para el principal, cuyos
+     * huecos gestiona {@link #call}; la copia libera los suyos al terminar.
+     */
+    private Future<?> submitAttempt(String model, Prompt prompt, Permit permit, HedgeSlot slot,
+                                    CompletableFuture<Attempt> winner, AtomicInteger pending) {
+        return chatUpstreamExecutor.submit(() -> {
+            if (slot != null && !slot.claim()) {
+                return;
+            }
+            try {
+                ChatResponse response = chatModel.call(prompt);
+                Usage usage = response.getMetadata().getUsage();
+                settle(permit, usage);
+                if (!winner.complete(new Attempt(response, slot != null)) && usage != null) {
+                    usageAccountant.record(model, HEDGE_CALLER, usage.getPromptTokens(), usage.getCompletionTokens());
+                }
+            } catch (RuntimeException e) {
+                // Solo se propaga el error si no queda ningún intento en curso.
+                if (pending.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            } finally {
+                if (slot != null) {
+                    slot.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reserva para la copia: hueco adaptativo, hueco del modelo y cuota, sin
+     * esperar por ninguno. Devuelve {@code null} si falta alguno.
+     */
+    private HedgeSlot acquireHedgeSlot(String model, Prompt prompt) {
+        if (!adaptiveLimiter.tryAcquire()) {
+            return null;
+        }
+        if (!concurrencyLimiter.tryAcquire(model)) {
+            adaptiveLimiter.release(0, false);
+            return null;
+        }
+        Permit permit = quotaScheduler.tryAcquire(model, tokenEstimator.estimate(prompt.getContents()));
+        if (permit == null) {
+            concurrencyLimiter.release(model);
+            adaptiveLimiter.release(0, false);
+            return null;
+        }
+        return new HedgeSlot(model, permit);
+    }
+
+    private record Attempt(ChatResponse response, boolean hedged) {}
+
+    /** Huecos de la copia; los libera una sola vez quien la reclame primero. */
+    private final class HedgeSlot {
+        private final String model;
+        private final Permit permit;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private HedgeSlot(String model, Permit permit) {
+            this.model = model;
+            this.permit = permit;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void release() {
+            concurrencyLimiter.release(model);
+            adaptiveLimiter.release(0, false);
+        }
+
+        /** La copia no llegó a llamar a Gemini: además de los huecos, devuelve la cuota reservada. */
+        private void cancel() {
+            release();
+            quotaScheduler.cancel(permit);
+        }
+    }
+
+    private record Lease(Permit permit, long trial) {}
+
+    private void settle(Permit permit, Usage usage) {
+        if (usage != null) {
+            quotaScheduler.reconcile(permit, usage.getTotalTokens());
+        }
+    }
+
+    private void onSuccess(String model) {
+        quotaScheduler.onSuccess(model);
+        circuitBreaker.onSuccess(model);
+    }
+
+    private void onError(String model, UpstreamError cause) {
+        if (cause == UpstreamError.RATE_LIMITED) {
+            quotaScheduler.onRateLimited(model);
+        }
+        circuitBreaker.onError(model, cause);
+    }
+}
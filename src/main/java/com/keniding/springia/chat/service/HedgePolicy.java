@@ -0,0 +1,123 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Política de hedging para las llamadas a Gemini.
+ * <p>
+ * Si una llamada no ha respondido al cabo del percentil configurado de la
+ * latencia reciente del modelo (p95 por defecto), se lanza una copia y se
+ * usa la primera que responda. El número de copias está acotado por un
+ * presupuesto: cada llamada aporta {@code budget-ratio} créditos y cada copia
+ * consume uno, así que como mucho se duplica ese porcentaje del tráfico.
+ */
+@Component
+@RequiredArgsConstructor
+public class HedgePolicy {
+
+    private static final double MAX_CREDITS = 10;
+
+    private final LatencyTracker latencyTracker;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${chat.hedging.min-delay:500ms}")
+    private Duration minDelay;
+
+    @Value("${chat.hedging.min-samples:50}")
+    private int minSamples;
+
+    @Value("${chat.hedging.budget-ratio:0.05}")
+    private double budgetRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private double credits;
+
+    /**
+     * Umbral tras el que conviene lanzar la copia, o {@code null} si no se
+     * debe hacer hedging (desactivado o sin muestras suficientes).
+     */
+    public Duration threshold(String model) {
+        if (!enabled) {
+            return null;
+        }
+        addCredits();
+        Duration observed = latencyTracker.percentile(model, percentile, minSamples);
+        if (observed == null) {
+            return null;
+        }
+        return observed.compareTo(minDelay) > 0 ? observed : minDelay;
+    }
+
+    public boolean tryHedge(String model) {
+        lock.lock();
+        try {
+            if (credits < 1) {
+                counter("chat.hedge.denied", model).increment();
+                return false;
+            }
+            credits -= 1;
+        } finally {
+            lock.unlock();
+        }
+        counter("chat.hedge.sent", model).increment();
+        return true;
+    }
+
+    /** La copia no salió por falta de cuota o capacidad local: se devuelve el crédito. */
+    public void hedgeSkipped(String model) {
+        lock.lock();
+        try {
+            credits = Math.min(MAX_CREDITS, credits + 1);
+        } finally {
+            lock.unlock();
+        }
+        counter("chat.hedge.skipped", model).increment();
+    }
+
+    public void hedgeWon(String model) {
+        counter("chat.hedge.won", model).increment();
+    }
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            return Map.of(
+                    "enabled", enabled,
+                    "percentile", percentile,
+                    "budgetRatio", budgetRatio,
+                    "credits", credits
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addCredits() {
+        lock.lock();
+        try {
+            credits = Math.min(MAX_CREDITS, credits + budgetRatio);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Counter counter(String name, String model) {
+        return Counter.builder(name)
+                .tag("model", model)
+                .register(meterRegistry);
+    }
+}
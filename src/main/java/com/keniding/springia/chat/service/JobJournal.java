@@ -0,0 +1,230 @@
+package com.keniding.springia.chat.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Diario de trabajos en un fichero de solo añadido, una entrada JSON por
+ * línea. Al arrancar se relee para reconstruir la cola; una última línea a
+ * medio escribir (caída durante la escritura) se descarta y se trunca.
+ * <p>
+ * Cada entrada se añade junto con el cambio de estado que apunta, bajo el
+ * mismo cerrojo que la compactación: así la foto de trabajos vivos que se
+ * reescribe nunca pierde una entrada añadida mientras se tomaba.
+ */
+@Slf4j
+class JobJournal implements AutoCloseable {
+
+    static final String SUBMIT = "submit";
+    static final String START = "start";
+    static final String COMPLETE = "complete";
+    static final String FAIL = "fail";
+    static final String CANCEL = "cancel";
+
+    private final Path path;
+    private final JsonMapper jsonMapper;
+    private final boolean fsync;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private volatile long entries;
+
+    JobJournal(Path path, JsonMapper jsonMapper, boolean fsync) {
+        this.path = path;
+        this.jsonMapper = jsonMapper;
+        this.fsync = fsync;
+    }
+
+    /** Lee todas las entradas válidas y deja el diario abierto para añadir. */
+    List<Entry> open() {
+        lock.lock();
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            List<Entry> read = new ArrayList<>();
+            if (Files.exists(path)) {
+                truncateTornTail();
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        try {
+                            read.add(jsonMapper.readValue(line, Entry.class));
+                        } catch (RuntimeException e) {
+                            log.warn("Entrada del diario de trabajos ilegible, se ignora: {}", e.getMessage());
+                        }
+                    }
+                }
+            }
+            entries = read.size();
+            channel = openChannel();
+            return read;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el diario de trabajos " + path, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Añade la entrada y, ya escrita, aplica {@code apply} sin soltar el
+     * cerrojo. Si la escritura falla el cambio de estado no se aplica.
+     */
+    void append(Entry entry, Runnable apply) {
+        byte[] line = (jsonMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            entries++;
+            apply.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el diario de trabajos", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long entries() {
+        return entries;
+    }
+
+    /**
+     * Reescribe el diario solo con las entradas que devuelve {@code snapshot},
+     * llamado con el cerrojo tomado: se escribe a un fichero temporal y se
+     * sustituye de forma atómica.
+     */
+    void rewrite(Supplier<List<Entry>> snapshot) {
+        lock.lock();
+        try {
+            List<Entry> live = snapshot.get();
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Entry entry : live) {
+                    out.write(ByteBuffer.wrap((jsonMapper.writeValueAsString(entry) + "\n")
+                            .getBytes(StandardCharsets.UTF_8)));
+                }
+                out.force(true);
+            }
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel();
+            entries = live.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo compactar el diario de trabajos", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error cerrando el diario de trabajos: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Quita una última línea sin salto final: si no, la siguiente entrada se
+     * pegaría a ella y también se perdería en la próxima relectura.
+     */
+    private void truncateTornTail() throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = file.size();
+            long keep = 0;
+            long end = size;
+            ByteBuffer block = ByteBuffer.allocate(8192);
+            search:
+            while (end > 0) {
+                int length = (int) Math.min(block.capacity(), end);
+                long start = end - length;
+                block.clear().limit(length);
+                while (block.hasRemaining()) {
+                    if (file.read(block, start + block.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = length - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        keep = start + i + 1;
+                        break search;
+                    }
+                }
+                end = start;
+            }
+            if (keep < size) {
+                log.warn("Última entrada del diario de trabajos incompleta ({} bytes), se descarta", size - keep);
+                file.truncate(keep);
+            }
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Entry(
+            String op,
+            String id,
+            Instant at,
+            Long seq,
+            Priority priority,
+            String caller,
+            ChatRequest request,
+            ChatResponse result,
+            String error
+    ) {
+        static Entry submit(String id, long seq, Priority priority, String caller, ChatRequest request, Instant at) {
+            return new Entry(SUBMIT, id, at, seq, priority, caller, request, null, null);
+        }
+
+        static Entry event(String op, String id, Instant at) {
+            return new Entry(op, id, at, null, null, null, null, null, null);
+        }
+
+        static Entry complete(String id, ChatResponse result, Instant at) {
+            return new Entry(COMPLETE, id, at, null, null, null, null, result, null);
+        }
+
+        static Entry fail(String id, String error, Instant at) {
+            return new Entry(FAIL, id, at, null, null, null, null, null, error);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.keniding.springia.chat.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Latencias recientes de Gemini por modelo (ventana de las últimas llamadas
+ * correctas). Sirve para decisiones en caliente, como el umbral de hedging,
+ * que no pueden esperar a que se agreguen las métricas.
+ */
+@Component
+public class LatencyTracker {
+
+    private static final int WINDOW = 256;
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public void record(String model, long nanos) {
+        windows.computeIfAbsent(model, _ -> new Window()).add(nanos);
+    }
+
+    /**
+     * Percentil de la ventana, o {@code null} si aún no hay muestras
+     * suficientes para que sea representativo.
+     */
+    public Duration percentile(String model, double percentile, int minSamples) {
+        Window window = windows.get(model);
+        if (window == null) {
+            return null;
+        }
+        return window.percentile(percentile, minSamples);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        windows.forEach((model, window) -> {
+            Duration p50 = window.percentile(0.50, 1);
+            Duration p95 = window.percentile(0.95, 1);
+            stats.put(model, Map.of(
+                    "samples", window.size(),
+                    "p50Ms", p50 != null ? p50.toMillis() : 0,
+                    "p95Ms", p95 != null ? p95.toMillis() : 0
+            ));
+        });
+        return stats;
+    }
+
+    private static final class Window {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] samples = new long[WINDOW];
+        private int next;
+        private int count;
+        private int sinceSort;
+        private long[] sorted = new long[0];
+
+        private void add(long nanos) {
+            lock.lock();
+            try {
+                samples[next] = nanos;
+                next = (next + 1) % WINDOW;
+                count = Math.min(count + 1, WINDOW);
+                sinceSort++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Duration percentile(double percentile, int minSamples) {
+            lock.lock();
+            try {
+                if (count < minSamples || count == 0) {
+                    return null;
+                }
+                // Ordenar la ventana tiene coste; se reutiliza el orden mientras
+                // no hayan entrado suficientes muestras nuevas.
+                if (sinceSort >= RECOMPUTE_EVERY || sorted.length != count) {
+                    sorted = Arrays.copyOf(samples, count);
+                    Arrays.sort(sorted);
+                    sinceSort = 0;
+                }
+                int index = (int) Math.ceil(percentile * sorted.length) - 1;
+                return Duration.ofNanos(sorted[Math.clamp(index, 0, sorted.length - 1)]);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
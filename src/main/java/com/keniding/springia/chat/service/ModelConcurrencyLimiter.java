@@ -0,0 +1,76 @@
+package com.keniding.springia.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Límite de llamadas simultáneas a Gemini por modelo.
+ * <p>
+ * Con hilos virtuales el número de peticiones en espera ya no está acotado
+ * por el pool de Tomcat, así que el tope se aplica aquí, justo antes de la
+ * llamada remota.
+ */
+@Slf4j
+@Component
+public class ModelConcurrencyLimiter {
+
+    @Value("${chat.execution.max-in-flight-per-model:256}")
+    private int maxInFlightPerModel;
+
+    @Value("${chat.execution.acquire-timeout:30s}")
+    private Duration acquireTimeout;
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public void acquire(String model) {
+        Semaphore semaphore = semaphoreFor(model);
+        try {
+            if (!semaphore.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Sin capacidad para el modelo {} tras {}", model, acquireTimeout);
+                throw new CapacityExceededException(
+                        "Demasiadas llamadas simultáneas al modelo " + model, Duration.ofSeconds(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CapacityExceededException("Espera interrumpida para el modelo " + model, Duration.ZERO);
+        }
+    }
+
+    /** Reserva un hueco solo si lo hay ya, sin esperar. */
+    public boolean tryAcquire(String model) {
+        return semaphoreFor(model).tryAcquire();
+    }
+
+    public void release(String model) {
+        semaphoreFor(model).release();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInFlightPerModel", maxInFlightPerModel);
+        permits.forEach((model, semaphore) -> stats.put(model, Map.of(
+                "inFlight", maxInFlightPerModel - semaphore.availablePermits(),
+                "queued", semaphore.getQueueLength()
+        )));
+        return stats;
+    }
+
+    private Semaphore semaphoreFor(String model) {
+        return permits.computeIfAbsent(model, _ -> new Semaphore(maxInFlightPerModel, true));
+    }
+
+    /** Rechazo local y pasajero: se trata como saturación (503 con Retry-After). */
+    public static class CapacityExceededException extends ServiceOverloadedException {
+        public CapacityExceededException(String message, Duration retryAfter) {
+            super(message, retryAfter);
+        }
+    }
+}
@@ -5,21 +5,185 @@ import com.google.genai.Pager;
 import com.google.genai.errors.GenAiIOException;
 import com.google.genai.types.ListModelsConfig;
 import com.google.genai.types.Model;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Catálogo de modelos de Google GenAI.
+ * <p>
+ * El catálogo remoto se descarga en el calentamiento posterior al arranque
+ * (o en la primera consulta, si está desactivado) y se guarda como una instantánea
+ * inmutable indexada por nombre. Las lecturas son locales; cuando la
+ * instantánea caduca se sirve la anterior mientras se refresca en segundo
+ * plano (stale-while-revalidate). Si el refresco falla se conserva la última
+ * instantánea válida.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ModelDiscoveryService {
 
-    private final Client googleGenAiClient;
+    private static final String MODEL_PREFIX = "models/";
+    private static final String CHAT_METHOD = "generateContent";
+
+    /** Perezoso: el cliente se crea en el primer uso, no al arrancar. */
+    private final ObjectProvider<Client> googleGenAiClient;
+
+    @Value("${chat.catalog.ttl:10m}")
+    private Duration catalogTtl;
+
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicReference<String> lastRefreshError = new AtomicReference<>();
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("model-catalog-refresh").daemon().factory());
+
+    /**
+     * Carga el catálogo en segundo plano sin esperar a la primera consulta.
+     */
+    public void preload() {
+        refreshInBackground();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
 
     public List<ModelInfo> listAvailableModels() {
+        return currentSnapshot().all();
+    }
+
+    public List<ModelInfo> listChatModels() {
+        return currentSnapshot().chat();
+    }
+
+    public boolean isModelAvailable(String modelName) {
+        try {
+            return currentSnapshot().byName().containsKey(fullName(modelName));
+        } catch (ModelDiscoveryException e) {
+            log.error("Error verificando modelo: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Busca un modelo en la instantánea local, sin llamadas remotas.
+     */
+    public Optional<ModelInfo> findModel(String modelName) {
+        CatalogSnapshot current = snapshot.get();
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(current.byName().get(fullName(modelName)));
+    }
+
+    public ModelInfo getModelInfo(String modelName) {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            ModelInfo cached = current.byName().get(fullName(modelName));
+            if (cached != null) {
+                triggerRefreshIfStale(current);
+                return cached;
+            }
+        }
+
+        try {
+            Model model = googleGenAiClient.getObject().models.get(modelName, null);
+            return toModelInfo(model);
+        } catch (GenAiIOException e) {
+            log.error("Error de Google GenAI obteniendo modelo {}: {}", modelName, e.getMessage(), e);
+            throw new ModelDiscoveryException("Modelo no encontrado: " + modelName, e);
+        } catch (Exception e) {
+            log.error("Error inesperado obteniendo modelo {}: {}", modelName, e.getMessage(), e);
+            throw new ModelDiscoveryException("Error al obtener información del modelo: " + modelName, e);
+        }
+    }
+
+    /**
+     * Instantánea vigente del catálogo. Solo bloquea si todavía no se ha
+     * cargado ninguna; en caso contrario devuelve la actual y, si ha caducado,
+     * lanza un refresco en segundo plano.
+     */
+    public CatalogSnapshot currentSnapshot() {
+        CatalogSnapshot current = snapshot.get();
+        if (current == null) {
+            return refreshNow();
+        }
+        triggerRefreshIfStale(current);
+        return current;
+    }
+
+    public Map<String, Object> catalogStatus() {
+        CatalogSnapshot current = snapshot.get();
+        String error = lastRefreshError.get();
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("loaded", current != null);
+        status.put("loadedAt", current != null ? current.loadedAt().toString() : "N/A");
+        status.put("refreshing", refreshing.get());
+        status.put("lastRefreshError", error != null ? error : "N/A");
+        return status;
+    }
+
+    private void triggerRefreshIfStale(CatalogSnapshot current) {
+        if (current.loadedAt().plus(catalogTtl).isBefore(Instant.now())) {
+            refreshInBackground();
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                loadSnapshot();
+            } catch (ModelDiscoveryException e) {
+                log.warn("No se pudo refrescar el catálogo, se mantiene la instantánea anterior: {}",
+                        e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private synchronized CatalogSnapshot refreshNow() {
+        CatalogSnapshot current = snapshot.get();
+        return current != null ? current : loadSnapshot();
+    }
+
+    private CatalogSnapshot loadSnapshot() {
+        try {
+            CatalogSnapshot loaded = CatalogSnapshot.of(fetchModels());
+            snapshot.set(loaded);
+            lastRefreshError.set(null);
+            log.info("Catálogo de modelos cargado: {} modelos ({} de chat)",
+                    loaded.all().size(), loaded.chat().size());
+            return loaded;
+        } catch (ModelDiscoveryException e) {
+            lastRefreshError.set(e.getMessage());
+            throw e;
+        }
+    }
+
+    private List<ModelInfo> fetchModels() {
         try {
             log.info("Listando modelos disponibles...");
 
@@ -27,32 +191,13 @@ public class ModelDiscoveryService {
                     .pageSize(100)
                     .build();
 
-            Pager<Model> pager = googleGenAiClient.models.list(config);
+            Pager<Model> pager = googleGenAiClient.getObject().models.list(config);
 
             List<ModelInfo> modelInfoList = new ArrayList<>();
 
             for (Model model : pager) {
-                String name = model.name().orElse("unknown");
-                String displayName = model.displayName().orElse("N/A");
-                String description = model.description().orElse("N/A");
-
-                List<String> supportedMethods = model.supportedActions()
-                        .orElse(List.of());
-
-                Integer inputTokenLimit = model.inputTokenLimit().orElse(0);
-                Integer outputTokenLimit = model.outputTokenLimit().orElse(0);
-
-                log.info("Modelo encontrado: {} - {}", name, displayName);
-
-                ModelInfo modelInfo = new ModelInfo(
-                        name,
-                        displayName,
-                        description,
-                        supportedMethods,
-                        inputTokenLimit,
-                        outputTokenLimit
-                );
-
+                ModelInfo modelInfo = toModelInfo(model);
+                log.debug("Modelo encontrado: {} - {}", modelInfo.name(), modelInfo.displayName());
                 modelInfoList.add(modelInfo);
             }
 
@@ -67,42 +212,19 @@ public class ModelDiscoveryService {
         }
     }
 
-    public List<ModelInfo> listChatModels() {
-        return listAvailableModels().stream()
-                .filter(model -> model.supportedMethods().contains("generateContent"))
-                .toList();
-    }
-
-    public boolean isModelAvailable(String modelName) {
-        try {
-            List<ModelInfo> models = listAvailableModels();
-            return models.stream()
-                    .anyMatch(model -> model.name().contains(modelName));
-        } catch (ModelDiscoveryException e) {
-            log.error("Error verificando modelo: {}", e.getMessage(), e);
-            return false;
-        }
+    private static ModelInfo toModelInfo(Model model) {
+        return new ModelInfo(
+                model.name().orElse("unknown"),
+                model.displayName().orElse("N/A"),
+                model.description().orElse("N/A"),
+                model.supportedActions().orElse(List.of()),
+                model.inputTokenLimit().orElse(0),
+                model.outputTokenLimit().orElse(0)
+        );
     }
 
-    public ModelInfo getModelInfo(String modelName) {
-        try {
-            Model model = googleGenAiClient.models.get(modelName, null);
-
-            return new ModelInfo(
-                    model.name().orElse("unknown"),
-                    model.displayName().orElse("N/A"),
-                    model.description().orElse("N/A"),
-                    model.supportedActions().orElse(List.of()),
-                    model.inputTokenLimit().orElse(0),
-                    model.outputTokenLimit().orElse(0)
-            );
-        } catch (GenAiIOException e) {
-            log.error("Error de Google GenAI obteniendo modelo {}: {}", modelName, e.getMessage(), e);
-            throw new ModelDiscoveryException("Modelo no encontrado: " + modelName, e);
-        } catch (Exception e) {
-            log.error("Error inesperado obteniendo modelo {}: {}", modelName, e.getMessage(), e);
-            throw new ModelDiscoveryException("Error al obtener información del modelo: " + modelName, e);
-        }
+    static String fullName(String modelName) {
+        return modelName.startsWith(MODEL_PREFIX) ? modelName : MODEL_PREFIX + modelName;
     }
 
     public record ModelInfo(
@@ -112,7 +234,34 @@ public class ModelDiscoveryService {
             List<String> supportedMethods,
             Integer inputTokenLimit,
             Integer outputTokenLimit
-    ) {}
+    ) {
+        public boolean supportsChat() {
+            return supportedMethods.contains(CHAT_METHOD);
+        }
+    }
+
+    /**
+     * Vista inmutable del catálogo en un instante dado.
+     */
+    public record CatalogSnapshot(
+            Map<String, ModelInfo> byName,
+            List<ModelInfo> all,
+            List<ModelInfo> chat,
+            Instant loadedAt
+    ) {
+        static CatalogSnapshot of(List<ModelInfo> models) {
+            Map<String, ModelInfo> byName = new LinkedHashMap<>();
+            for (ModelInfo model : models) {
+                byName.put(model.name(), model);
+            }
+            return new CatalogSnapshot(
+                    Map.copyOf(byName),
+                    List.copyOf(models),
+                    models.stream().filter(ModelInfo::supportsChat).toList(),
+                    Instant.now()
+            );
+        }
+    }
 
     public static class ModelDiscoveryException extends RuntimeException {
         public ModelDiscoveryException(String message, Throwable cause) {
@@ -0,0 +1,221 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.ModelDiscoveryService.ModelInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Elige el modelo de cada petición y gestiona la cadena de respaldo.
+ * <p>
+ * La cadena {@code chat.routing.chain} va del modelo más barato/rápido al más
+ * capaz. Los prompts cortos empiezan por la cabeza de la cadena; los largos
+ * solo van a modelos cuyo {@code inputTokenLimit} (según el catálogo) los
+ * admite. Los modelos con el circuito abierto, sin cuota local o cuya latencia
+ * reciente supera el presupuesto pasan al final. Si un modelo devuelve 429,
+ * 5xx, timeout, está saturado o no admite el prompt, se prueba el siguiente.
+ * <p>
+ * Solo el último modelo de la cadena espera por cuota local: a los demás se
+ * les comprueba antes sin bloquear y, si tendrían que esperar, se salta al
+ * siguiente. El rechazo del límite adaptativo global no provoca respaldo,
+ * porque afectaría igual al resto de modelos.
+ * <p>
+ * Con {@code chat.routing.enabled=false} la cadena es solo el modelo por
+ * defecto.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelRouter {
+
+    private final ModelDiscoveryService modelDiscoveryService;
+    private final LatencyTracker latencyTracker;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final QuotaScheduler quotaScheduler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.routing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.routing.chain:gemini-2.5-flash-lite,gemini-2.5-flash,gemini-2.5-pro}")
+    private List<String> chain;
+
+    @Value("${chat.routing.short-prompt-tokens:2000}")
+    private long shortPromptTokens;
+
+    @Value("${chat.routing.latency-budget:15s}")
+    private Duration latencyBudget;
+
+    @Value("${spring.ai.google.genai.chat.options.model:gemini-2.5-flash}")
+    private String defaultModel;
+
+    /**
+     * Orden de modelos a probar para un prompt con los tokens estimados.
+     */
+    public List<String> route(long estimatedPromptTokens) {
+        if (!enabled) {
+            return List.of(defaultModel);
+        }
+
+        List<String> candidates = new ArrayList<>();
+        for (String model : chain) {
+            if (estimatedPromptTokens <= shortPromptTokens || fits(model, estimatedPromptTokens)) {
+                candidates.add(model);
+            }
+        }
+        if (candidates.isEmpty()) {
+            log.warn("Ningún modelo de la cadena admite ~{} tokens; se usa el último", estimatedPromptTokens);
+            candidates.add(chain.getLast());
+        }
+
+        // Orden estable: se conserva el orden de la cadena salvo para los
+        // modelos no disponibles o demasiado lentos, que pasan al final.
+        candidates.sort(Comparator.comparing(model -> isDegraded(model)
+                || quotaScheduler.wouldWait(model, estimatedPromptTokens)));
+        return List.copyOf(candidates);
+    }
+
+    /**
+     * Ejecuta la llamada sobre la cadena, pasando al siguiente modelo ante
+     * errores que justifican el respaldo.
+     */
+    public <T> T call(List<String> plan, Function<String, T> attempt) {
+        RuntimeException lastError = null;
+        for (int i = 0; i < plan.size(); i++) {
+            String model = plan.get(i);
+            if (i < plan.size() - 1 && skipForQuota(model, plan.get(i + 1))) {
+                continue;
+            }
+            try {
+                return attempt.apply(model);
+            } catch (RuntimeException e) {
+                if (!shouldFallback(e) || i == plan.size() - 1) {
+                    throw e;
+                }
+                lastError = e;
+                onFallback(model, plan.get(i + 1), e);
+            }
+        }
+        throw lastError != null ? lastError : new IllegalStateException("Cadena de modelos vacía");
+    }
+
+    public <T> Mono<T> mono(List<String> plan, Function<String, Mono<T>> attempt) {
+        return mono(plan, 0, attempt);
+    }
+
+    /**
+     * Variante para streams: solo se pasa al siguiente modelo si el actual
+     * falla antes de emitir nada, para no mezclar respuestas.
+     */
+    public <T> Flux<T> flux(List<String> plan, Function<String, Flux<T>> attempt) {
+        return flux(plan, 0, attempt);
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "enabled", enabled,
+                "chain", enabled ? chain : List.of(defaultModel),
+                "shortPromptTokens", shortPromptTokens,
+                "latencyBudgetMs", latencyBudget.toMillis()
+        );
+    }
+
+    private <T> Mono<T> mono(List<String> plan, int index, Function<String, Mono<T>> attempt) {
+        String model = plan.get(index);
+        return Mono.defer(() -> {
+            if (index + 1 < plan.size() && skipForQuota(model, plan.get(index + 1))) {
+                return mono(plan, index + 1, attempt);
+            }
+            return Mono.defer(() -> attempt.apply(model))
+                    .onErrorResume(e -> index + 1 < plan.size() && shouldFallback(e), e -> {
+                        onFallback(model, plan.get(index + 1), e);
+                        return mono(plan, index + 1, attempt);
+                    });
+        });
+    }
+
+    private <T> Flux<T> flux(List<String> plan, int index, Function<String, Flux<T>> attempt) {
+        String model = plan.get(index);
+        return Flux.defer(() -> {
+            if (index + 1 < plan.size() && skipForQuota(model, plan.get(index + 1))) {
+                return flux(plan, index + 1, attempt);
+            }
+            AtomicBoolean emitted = new AtomicBoolean();
+            return Flux.defer(() -> attempt.apply(model))
+                    .doOnNext(_ -> emitted.set(true))
+                    .onErrorResume(e -> !emitted.get() && index + 1 < plan.size() && shouldFallback(e), e -> {
+                        onFallback(model, plan.get(index + 1), e);
+                        return flux(plan, index + 1, attempt);
+                    });
+        });
+    }
+
+    private boolean fits(String model, long estimatedPromptTokens) {
+        Optional<ModelInfo> info = modelDiscoveryService.findModel(model);
+        // Sin datos del catálogo no se descarta el modelo: que decida Gemini.
+        return info.map(m -> m.inputTokenLimit() == 0 || m.inputTokenLimit() >= estimatedPromptTokens)
+                .orElse(true);
+    }
+
+    private boolean isDegraded(String model) {
+        if (!circuitBreaker.isAvailable(model)) {
+            return true;
+        }
+        Duration p95 = latencyTracker.percentile(model, 0.95, 20);
+        return p95 != null && p95.compareTo(latencyBudget) > 0;
+    }
+
+    /**
+     * Comprobación sin bloqueo antes de un modelo que no es el último: si su
+     * cuota local obligaría a esperar, se pasa al siguiente en el acto en
+     * lugar de agotar la espera máxima en cada modelo de la cadena.
+     */
+    private boolean skipForQuota(String model, String next) {
+        if (!quotaScheduler.wouldWait(model, 1)) {
+            return false;
+        }
+        onFallback(model, next, "sin cuota local");
+        return true;
+    }
+
+    private static boolean shouldFallback(Throwable e) {
+        if (e instanceof AdaptiveConcurrencyLimiter.LimitExceededException) {
+            return false;
+        }
+        // Incluye la cuota local y el tope por modelo, que son subclases.
+        if (e instanceof ServiceOverloadedException
+                || e instanceof PromptPreflight.PromptTooLargeException) {
+            return true;
+        }
+        UpstreamError cause = UpstreamError.classify(e);
+        return cause.isRetryable() || cause == UpstreamError.NOT_FOUND;
+    }
+
+    private void onFallback(String from, String to, Throwable e) {
+        onFallback(from, to, e.getMessage());
+    }
+
+    private void onFallback(String from, String to, String reason) {
+        log.warn("Modelo {} no disponible ({}), probando {}", from, reason, to);
+        Counter.builder("chat.routing.fallbacks")
+                .description("Cambios de modelo por error del modelo preferido")
+                .tag("from", from)
+                .tag("to", to)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,32 @@
+package com.keniding.springia.chat.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Clave de una petición al modelo: mensaje normalizado + opciones efectivas.
+ * Dos peticiones con la misma clave producen (en principio) la misma respuesta.
+ */
+public record PromptKey(
+        String message,
+        String model,
+        Double temperature,
+        Integer maxTokens
+) {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public static PromptKey of(String message, String model, Double temperature, Integer maxTokens) {
+        return new PromptKey(normalize(message), model, temperature, maxTokens);
+    }
+
+    /** La misma petición dirigida a otro modelo y con otro {@code maxTokens}. */
+    public PromptKey withModel(String model, Integer maxTokens) {
+        return new PromptKey(message, model, temperature, maxTokens);
+    }
+
+    static String normalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(message.strip()).replaceAll(" ");
+    }
+}
@@ -0,0 +1,79 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.ModelDiscoveryService.ModelInfo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Validación previa a la llamada: estima los tokens del prompt, comprueba el
+ * {@code inputTokenLimit} del modelo y recorta {@code maxTokens} al
+ * {@code outputTokenLimit}, todo con el catálogo local. Así un prompt que
+ * Gemini va a rechazar no llega a salir del servicio.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PromptPreflight {
+
+    private final ModelDiscoveryService modelDiscoveryService;
+
+    public Result check(String model, long promptTokens, Integer maxTokens) {
+        Optional<ModelInfo> info = modelDiscoveryService.findModel(model);
+        int inputLimit = info.map(ModelInfo::inputTokenLimit).orElse(0);
+        int outputLimit = info.map(ModelInfo::outputTokenLimit).orElse(0);
+
+        Integer effectiveMaxTokens = maxTokens;
+        if (maxTokens != null && outputLimit > 0 && maxTokens > outputLimit) {
+            log.debug("maxTokens {} recortado a {} para {}", maxTokens, outputLimit, model);
+            effectiveMaxTokens = outputLimit;
+        }
+
+        boolean fits = inputLimit == 0 || promptTokens <= inputLimit;
+        return new Result(model, promptTokens, inputLimit, outputLimit, effectiveMaxTokens, fits);
+    }
+
+    /**
+     * Como {@link #check} pero lanza {@link PromptTooLargeException} si el
+     * prompt no cabe en el modelo.
+     */
+    public Result validate(String model, long promptTokens, Integer maxTokens) {
+        Result result = check(model, promptTokens, maxTokens);
+        if (!result.fits()) {
+            throw new PromptTooLargeException(String.format(
+                    "El prompt (~%d tokens) supera el límite de entrada de %s (%d tokens)",
+                    promptTokens, model, result.inputTokenLimit()));
+        }
+        return result;
+    }
+
+    /**
+     * Clave para un intento concreto de la cadena de respaldo: valida el
+     * prompt contra {@code model} y recorta el {@code maxTokens} pedido a su
+     * límite de salida, que puede ser menor que el del primer modelo.
+     */
+    public PromptKey forModel(PromptKey key, String model, long promptTokens, Integer maxTokens) {
+        return key.withModel(model, validate(model, promptTokens, maxTokens).maxTokens());
+    }
+
+    /**
+     * Resultado de la validación. Los límites son 0 si el modelo no está en
+     * el catálogo, en cuyo caso no se valida.
+     */
+    public record Result(
+            String model,
+            long estimatedPromptTokens,
+            int inputTokenLimit,
+            int outputTokenLimit,
+            Integer maxTokens,
+            boolean fits
+    ) {}
+
+    public static class PromptTooLargeException extends RuntimeException {
+        public PromptTooLargeException(String message) {
+            super(message);
+        }
+    }
+}
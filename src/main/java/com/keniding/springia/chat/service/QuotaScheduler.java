@@ -0,0 +1,377 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Planificador de cuota del lado del cliente para Gemini.
+ * <p>
+ * Cada modelo tiene dos token buckets, peticiones por minuto y tokens por
+ * minuto, con recarga continua. Las peticiones que no caben esperan en una
+ * cola por prioridad y plazo; si el plazo vence antes de haber cuota se
+ * rechazan sin llegar a llamar a Gemini. Un 429 vacía el bucket y bloquea el
+ * modelo con un backoff exponencial.
+ * <p>
+ * Límites por defecto en {@code chat.quota.default.*} y por modelo en
+ * {@code chat.quota.models.<modelo>.*}. Son límites por clave de API: con
+ * varias claves en {@code chat.gemini.api-keys} se multiplican por su número.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QuotaScheduler {
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.quota.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.quota.default.requests-per-minute:60}")
+    private long defaultRequestsPerMinute;
+
+    @Value("${chat.quota.default.tokens-per-minute:1000000}")
+    private long defaultTokensPerMinute;
+
+    @Value("${chat.quota.max-wait:30s}")
+    private Duration maxWait;
+
+    @Value("${chat.quota.backoff-initial:2s}")
+    private Duration backoffInitial;
+
+    @Value("${chat.quota.backoff-max:60s}")
+    private Duration backoffMax;
+
+    private final Map<String, ModelQuota> quotas = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * Reserva cuota para una llamada. Bloquea como mucho hasta el plazo
+     * configurado y lanza {@link QuotaExceededException} si no la obtiene.
+     */
+    public Permit acquire(String model, long estimatedTokens, Priority priority) {
+        if (!enabled) {
+            return new Permit(model, 0);
+        }
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        return quotaFor(model).acquire(Math.max(1, estimatedTokens), priority, deadline);
+    }
+
+    /**
+     * Reserva cuota solo si la hay ya y nadie espera delante; si no, devuelve
+     * {@code null} sin esperar ni contar un rechazo.
+     */
+    public Permit tryAcquire(String model, long estimatedTokens) {
+        if (!enabled) {
+            return new Permit(model, 0);
+        }
+        return quotaFor(model).tryAcquire(Math.max(1, estimatedTokens));
+    }
+
+    /**
+     * Indica si una reserva ahora tendría que esperar: modelo bloqueado tras
+     * un 429, peticiones en cola o bucket sin cuota suficiente. No reserva
+     * nada; el enrutado lo usa para pasar al siguiente modelo sin esperar.
+     */
+    public boolean wouldWait(String model, long estimatedTokens) {
+        if (!enabled) {
+            return false;
+        }
+        return quotaFor(model).wouldWait(Math.max(1, estimatedTokens));
+    }
+
+    /**
+     * Ajusta el bucket de tokens con el uso real informado por Gemini.
+     */
+    public void reconcile(Permit permit, Integer actualTokens) {
+        if (!enabled || actualTokens == null || permit.reservedTokens() == 0) {
+            return;
+        }
+        quotaFor(permit.model()).adjustTokens(permit.reservedTokens() - actualTokens);
+    }
+
+    /**
+     * Devuelve entera una reserva que no llegó a usarse: la petición y los
+     * tokens reservados vuelven al bucket.
+     */
+    public void cancel(Permit permit) {
+        if (!enabled || permit.reservedTokens() == 0) {
+            return;
+        }
+        quotaFor(permit.model()).refund(permit.reservedTokens());
+    }
+
+    public void onSuccess(String model) {
+        if (enabled) {
+            quotaFor(model).resetBackoff();
+        }
+    }
+
+    public void onRateLimited(String model) {
+        if (enabled) {
+            quotaFor(model).backOff();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        quotas.forEach((model, quota) -> stats.put(model, quota.stats()));
+        return stats;
+    }
+
+    private ModelQuota quotaFor(String model) {
+        return quotas.computeIfAbsent(model, m -> new ModelQuota(
+                m,
+                keyCount() * environment.getProperty("chat.quota.models." + m + ".requests-per-minute",
+                        Long.class, defaultRequestsPerMinute),
+                keyCount() * environment.getProperty("chat.quota.models." + m + ".tokens-per-minute",
+                        Long.class, defaultTokensPerMinute)));
+    }
+
+    private long keyCount() {
+        String[] keys = environment.getProperty("chat.gemini.api-keys", String[].class, new String[0]);
+        return Math.max(1, Arrays.stream(keys).map(String::trim).filter(k -> !k.isEmpty()).distinct().count());
+    }
+
+    public record Permit(String model, long reservedTokens) {}
+
+    /** Rechazo local y pasajero: se trata como saturación (503 con Retry-After). */
+    public static class QuotaExceededException extends ServiceOverloadedException {
+        public QuotaExceededException(String message, Duration retryAfter) {
+            super(message, retryAfter);
+        }
+    }
+
+    private record Ticket(Priority priority, long deadline, long sequence, long tokens) {
+        static final Comparator<Ticket> ORDER = Comparator
+                .comparing(Ticket::priority)
+                .thenComparingLong(Ticket::deadline)
+                .thenComparingLong(Ticket::sequence);
+    }
+
+    private final class ModelQuota {
+        private final String model;
+        private final long requestsPerMinute;
+        private final long tokensPerMinute;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(Ticket.ORDER);
+
+        private double requests;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long blockedUntil = lastRefill;
+        private int consecutiveRateLimits;
+
+        private final Timer waitTimer;
+        private final Counter rejected;
+
+        private ModelQuota(String model, long requestsPerMinute, long tokensPerMinute) {
+            this.model = model;
+            this.requestsPerMinute = requestsPerMinute;
+            this.tokensPerMinute = tokensPerMinute;
+            this.requests = requestsPerMinute;
+            this.tokens = tokensPerMinute;
+            this.waitTimer = Timer.builder("chat.quota.wait")
+                    .description("Espera por cuota local antes de llamar a Gemini")
+                    .tag("model", model)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("chat.quota.rejected")
+                    .description("Peticiones rechazadas por cuota local agotada")
+                    .tag("model", model)
+                    .register(meterRegistry);
+        }
+
+        private Permit acquire(long estimatedTokens, Priority priority, long deadline) {
+            long start = System.nanoTime();
+            // Una petición mayor que el bucket entero nunca cabría: se limita a su capacidad.
+            long needed = Math.min(estimatedTokens, tokensPerMinute);
+            Ticket ticket = new Ticket(priority, deadline, sequence.incrementAndGet(), needed);
+
+            lock.lock();
+            try {
+                waiting.add(ticket);
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+
+                    if (waiting.peek() == ticket && now - blockedUntil >= 0 && requests >= 1 && tokens >= needed) {
+                        requests -= 1;
+                        tokens -= needed;
+                        waiting.poll();
+                        changed.signalAll();
+                        waitTimer.record(now - start, TimeUnit.NANOSECONDS);
+                        return new Permit(model, needed);
+                    }
+
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        waiting.remove(ticket);
+                        changed.signalAll();
+                        rejected.increment();
+                        throw new QuotaExceededException(
+                                "Cuota local agotada para " + model + "; reintenta más tarde",
+                                Duration.ofNanos(nanosUntilAvailable(now, needed)));
+                    }
+                    changed.awaitNanos(Math.min(remaining, nanosUntilAvailable(now, needed)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                waiting.remove(ticket);
+                changed.signalAll();
+                throw new QuotaExceededException("Espera de cuota interrumpida para " + model, Duration.ZERO);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Permit tryAcquire(long estimatedTokens) {
+            long needed = Math.min(estimatedTokens, tokensPerMinute);
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                if (!availableNow(now, needed)) {
+                    return null;
+                }
+                requests -= 1;
+                tokens -= needed;
+                return new Permit(model, needed);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean wouldWait(long estimatedTokens) {
+            long needed = Math.min(estimatedTokens, tokensPerMinute);
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                return !availableNow(now, needed);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Hay cuota para {@code needed} sin esperar ni saltarse la cola. Requiere el cerrojo. */
+        private boolean availableNow(long now, long needed) {
+            return waiting.isEmpty() && now - blockedUntil >= 0 && requests >= 1 && tokens >= needed;
+        }
+
+        private void refund(long reservedTokens) {
+            lock.lock();
+            try {
+                requests = Math.min(requestsPerMinute, requests + 1);
+                tokens = Math.min(tokensPerMinute, tokens + reservedTokens);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void adjustTokens(long delta) {
+            lock.lock();
+            try {
+                tokens = Math.min(tokensPerMinute, tokens + delta);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void backOff() {
+            lock.lock();
+            try {
+                consecutiveRateLimits++;
+                long backoff = Math.min(
+                        backoffMax.toNanos(),
+                        backoffInitial.toNanos() << Math.min(consecutiveRateLimits - 1, 16));
+                long until = System.nanoTime() + backoff;
+                if (until - blockedUntil > 0) {
+                    blockedUntil = until;
+                }
+                requests = 0;
+                log.warn("429 de Gemini para {}: bloqueado {} ms", model, backoff / 1_000_000);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void resetBackoff() {
+            lock.lock();
+            try {
+                consecutiveRateLimits = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed <= 0) {
+                return;
+            }
+            requests = Math.min(requestsPerMinute, requests + (double) elapsed * requestsPerMinute / NANOS_PER_MINUTE);
+            tokens = Math.min(tokensPerMinute, tokens + (double) elapsed * tokensPerMinute / NANOS_PER_MINUTE);
+            lastRefill = now;
+        }
+
+        private long nanosUntilAvailable(long now, long needed) {
+            long wait = Math.max(0, blockedUntil - now);
+            if (requests < 1) {
+                wait = Math.max(wait, (long) ((1 - requests) * NANOS_PER_MINUTE / requestsPerMinute));
+            }
+            if (tokens < needed) {
+                wait = Math.max(wait, (long) ((needed - tokens) * NANOS_PER_MINUTE / tokensPerMinute));
+            }
+            // Si el bloqueo es por orden en la cola, basta con esperar a la siguiente señal.
+            return Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        private Map<String, Object> stats() {
+            lock.lock();
+            try {
+                refill(System.nanoTime());
+                return Map.of(
+                        "requestsPerMinute", requestsPerMinute,
+                        "tokensPerMinute", tokensPerMinute,
+                        "availableRequests", (long) requests,
+                        "availableTokens", (long) tokens,
+                        "waiting", waiting.size(),
+                        "blockedMs", Math.max(0, (blockedUntil - System.nanoTime()) / 1_000_000),
+                        "rejected", (long) rejected.count()
+                );
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * Variante no bloqueante de {@link ChatService}.
+ * <p>
+ * Construye la respuesta completa a partir de {@code ChatModel.stream}, sin
+ * retener ningún hilo mientras Gemini genera. Comparte caché y deduplicación
+ * con la API bloqueante, que sigue disponible sin cambios.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.reactive.enabled", havingValue = "true", matchIfMissing = true)
+public class ReactiveChatService {
+    private static final String ERROR_PREFIX = "Error: ";
+    private static final String ERROR_UNKNOWN = "Error desconocido";
+
+    private final GeminiGateway geminiGateway;
+    private final ChatService chatService;
+    private final UsageAccountant usageAccountant;
+    private final ChatResponseCache responseCache;
+    private final SemanticResponseCache semanticCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ModelRouter modelRouter;
+    private final TokenEstimator tokenEstimator;
+    private final PromptPreflight promptPreflight;
+    private final AuditLog auditLog;
+
+    @Value("${spring.ai.google.genai.chat.options.model:gemini-2.5-flash}")
+    private String modelName;
+
+    @Value("${spring.ai.google.genai.chat.options.temperature:0.7}")
+    private Double defaultTemperature;
+
+    @Value("${spring.ai.google.genai.chat.options.max-output-tokens:2048}")
+    private Integer defaultMaxTokens;
+
+    public Mono<ChatResponse> simpleChat(String message) {
+        ChatRequest request = new ChatRequest();
+        request.setMessage(message);
+        return customChat(request);
+    }
+
+    public Mono<ChatResponse> customChat(ChatRequest chatRequest) {
+        String caller = UsageAccountant.currentCaller();
+        if (chatRequest.getSessionId() != null && !chatRequest.getSessionId().isBlank()) {
+            // Las sesiones se serializan por conversación; se delegan en la ruta bloqueante.
+            return Mono.fromCallable(() -> chatService.customChat(chatRequest, caller))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return Mono.defer(() -> {
+            long startTime = System.nanoTime();
+
+            Double temperature = chatRequest.getTemperature() != null ?
+                    chatRequest.getTemperature() : defaultTemperature;
+            Integer maxTokens = chatRequest.getMaxTokens() != null ?
+                    chatRequest.getMaxTokens() : defaultMaxTokens;
+
+            long promptTokens = tokenEstimator.estimate(chatRequest.getMessage());
+            List<String> plan = modelRouter.route(promptTokens);
+            var preflight = promptPreflight.validate(plan.getFirst(), promptTokens, maxTokens);
+
+            PromptKey key = PromptKey.of(chatRequest.getMessage(), plan.getFirst(), temperature, preflight.maxTokens());
+            ChatResponse cached = responseCache.isCacheable(key) ? responseCache.get(key) : null;
+            if (cached == null) {
+                cached = semanticCache.get(key);
+            }
+            if (cached != null) {
+                cached.setResponseTimeMs(elapsedMs(startTime));
+                auditLog.record(AuditRecord.of(AuditRecord.REACTIVE, AuditRecord.CACHED, caller,
+                        chatRequest.getMessage(), null, cached));
+                return Mono.just(cached);
+            }
+
+            return requestCoalescer.share(key, () -> streamModel(key, chatRequest.getMessage(), promptTokens, maxTokens, plan, caller))
+                    .doOnNext(response -> auditLog.record(AuditRecord.of(AuditRecord.REACTIVE, AuditRecord.OK,
+                            caller, chatRequest.getMessage(), null, response)))
+                    .onErrorResume(e -> !(e instanceof ServiceOverloadedException), e -> {
+                        log.error("Error en chat reactivo: ", e);
+                        auditLog.record(AuditRecord.error(AuditRecord.REACTIVE, caller, chatRequest.getMessage(),
+                                null, modelName, e, elapsedMs(startTime)));
+                        return Mono.just(ChatResponse.builder()
+                                .response(ERROR_PREFIX + (e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN))
+                                .model(modelName)
+                                .tokensUsed(0)
+                                .responseTimeMs(elapsedMs(startTime))
+                                .build());
+                    });
+        });
+    }
+
+    private Mono<ChatResponse> streamModel(PromptKey key, String message, long promptTokens, Integer maxTokens,
+                                           List<String> plan, String caller) {
+        long startTime = System.nanoTime();
+        return modelRouter.mono(plan, model -> {
+            PromptKey attempt = promptPreflight.forModel(key, model, promptTokens, maxTokens);
+            return geminiGateway.stream(model, ChatService.buildPrompt(message, model, attempt))
+                    .reduceWith(StreamAccumulator::new, StreamAccumulator::append)
+                    .map(accumulator -> {
+                        ChatResponse response = accumulator.toChatResponse(model, elapsedMs(startTime));
+                        usageAccountant.record(model, caller, response.getPromptTokens(), response.getCompletionTokens());
+                        if (!response.getResponse().isEmpty()) {
+                            responseCache.put(attempt, response);
+                            semanticCache.put(attempt, response);
+                        }
+                        return response;
+                    });
+        });
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
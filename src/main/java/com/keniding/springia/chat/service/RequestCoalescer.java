@@ -0,0 +1,208 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicación de peticiones idénticas en vuelo (single-flight).
+ * <p>
+ * La primera petición con una clave lanza la llamada al modelo en el executor
+ * de llamadas a Gemini; las siguientes con la misma clave esperan ese mismo
+ * resultado.
+ * Cada llamante se puede desenganchar sin afectar a los demás: la llamada
+ * compartida solo se cancela cuando ya no queda nadie esperándola.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestCoalescer {
+
+    private final ExecutorService chatUpstreamExecutor;
+
+    @Value("${chat.coalescing.enabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentHashMap<PromptKey, SharedCall> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PromptKey, Mono<ChatResponse>> inFlightReactive = new ConcurrentHashMap<>();
+
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder detached = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * Ejecuta (o se une a) la llamada para {@code key} y bloquea hasta obtener
+     * el resultado. Si el hilo llamante se interrumpe, solo este llamante se
+     * desengancha.
+     */
+    public ChatResponse execute(PromptKey key, Supplier<ChatResponse> upstreamCall) {
+        CompletableFuture<ChatResponse> result = submit(key, upstreamCall);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            throw new CancellationException("Petición cancelada por el cliente");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Versión asíncrona de {@link #execute}. El futuro devuelto pertenece a
+     * este llamante: cancelarlo lo desengancha de la llamada compartida.
+     */
+    public CompletableFuture<ChatResponse> submit(PromptKey key, Supplier<ChatResponse> upstreamCall) {
+        if (!enabled) {
+            upstreamCalls.increment();
+            return CompletableFuture.supplyAsync(upstreamCall, chatUpstreamExecutor);
+        }
+
+        SharedCall[] created = new SharedCall[1];
+        SharedCall call = inFlight.compute(key, (k, existing) -> {
+            if (existing != null && existing.join()) {
+                return existing;
+            }
+            created[0] = new SharedCall(k, upstreamCall);
+            return created[0];
+        });
+
+        if (created[0] != null) {
+            upstreamCalls.increment();
+            chatUpstreamExecutor.execute(call.task);
+        } else {
+            coalesced.increment();
+            log.debug("Petición unida a una llamada en vuelo ({} esperando)", call.waiters.get());
+        }
+
+        CompletableFuture<ChatResponse> mine = new CompletableFuture<>();
+        call.result.whenComplete((response, error) -> {
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(response);
+            }
+        });
+        mine.whenComplete((response, error) -> {
+            if (mine.isCancelled()) {
+                leave(call);
+            }
+        });
+        return mine;
+    }
+
+    /**
+     * Equivalente reactivo: los suscriptores con la misma clave comparten una
+     * única suscripción al modelo. Si todos cancelan, se cancela la llamada.
+     */
+    public Mono<ChatResponse> share(PromptKey key, Supplier<Mono<ChatResponse>> upstreamCall) {
+        if (!enabled) {
+            return Mono.defer(() -> {
+                upstreamCalls.increment();
+                return upstreamCall.get();
+            });
+        }
+
+        return Mono.defer(() -> {
+            boolean[] created = new boolean[1];
+            Mono<ChatResponse> shared = inFlightReactive.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return newSharedMono(k, upstreamCall);
+            });
+
+            if (created[0]) {
+                upstreamCalls.increment();
+            } else {
+                coalesced.increment();
+            }
+            return shared.doOnCancel(detached::increment);
+        });
+    }
+
+    public Map<String, Object> stats() {
+        long upstream = upstreamCalls.sum();
+        long saved = coalesced.sum();
+        return Map.of(
+                "enabled", enabled,
+                "inFlight", inFlight.size() + inFlightReactive.size(),
+                "upstreamCalls", upstream,
+                "coalescedRequests", saved,
+                "savedRatio", upstream + saved > 0 ? (double) saved / (upstream + saved) : 0.0,
+                "detachedWaiters", detached.sum(),
+                "cancelledCalls", cancelled.sum()
+        );
+    }
+
+    private void leave(SharedCall call) {
+        detached.increment();
+        if (call.waiters.decrementAndGet() == 0 && !call.result.isDone()) {
+            log.debug("Sin esperas para la llamada en vuelo, cancelando");
+            inFlight.remove(call.key, call);
+            call.task.cancel(true);
+            call.result.cancel(false);
+            cancelled.increment();
+        }
+    }
+
+    private Mono<ChatResponse> newSharedMono(PromptKey key, Supplier<Mono<ChatResponse>> upstreamCall) {
+        AtomicReference<Mono<ChatResponse>> self = new AtomicReference<>();
+        Mono<ChatResponse> shared = Mono.defer(upstreamCall)
+                .doOnCancel(cancelled::increment)
+                .doFinally(_ -> inFlightReactive.remove(key, self.get()))
+                .share();
+        self.set(shared);
+        return shared;
+    }
+
+    private final class SharedCall {
+        private final PromptKey key;
+        private final CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        private final FutureTask<Void> task;
+
+        private SharedCall(PromptKey key, Supplier<ChatResponse> upstreamCall) {
+            this.key = key;
+            this.task = new FutureTask<>(() -> {
+                try {
+                    result.complete(upstreamCall.get());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, this);
+                }
+                return null;
+            });
+        }
+
+        /** Se une a la llamada salvo que ya la hayan abandonado todos. */
+        private boolean join() {
+            int current;
+            do {
+                current = waiters.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché de respuestas para preguntas casi iguales (paráfrasis).
+ * <p>
+ * Cada prompt se resume en una huella {@link SimHash} de 64 bits, calculada en
+ * local. La huella se parte en 8 bandas de 8 bits que indexan las entradas
+ * (LSH): dos huellas con 7 bits distintos o menos coinciden por fuerza en
+ * alguna banda, así que basta con comparar contra las entradas de esas
+ * cubetas. Solo se reutiliza una respuesta si las opciones (modelo,
+ * temperatura, maxTokens) coinciden y la similitud supera el umbral.
+ * <p>
+ * Acotada por número de entradas y por bytes estimados, con TTL y desalojo
+ * LRU. No se guarda una respuesta si ya hay una entrada equivalente.
+ */
+@Slf4j
+@Component
+public class SemanticResponseCache {
+
+    private static final int BANDS = 8;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final long BAND_MASK = (1L << BAND_BITS) - 1;
+
+    /** Sobrecoste aproximado por entrada (clave, índices LSH, DTO). */
+    private static final long ENTRY_OVERHEAD_BYTES = 384;
+
+    @Value("${chat.semantic-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.semantic-cache.similarity-threshold:0.9}")
+    private double similarityThreshold;
+
+    @Value("${chat.semantic-cache.min-words:3}")
+    private int minWords;
+
+    @Value("${chat.semantic-cache.max-temperature:${chat.cache.max-temperature:1.0}}")
+    private double maxTemperature;
+
+    @Value("${chat.semantic-cache.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${chat.semantic-cache.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${chat.semantic-cache.ttl:30m}")
+    private Duration ttl;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, List<Long>> buckets = new HashMap<>();
+    private long nextId;
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder candidatesChecked = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final DistributionSummary hitSimilarity;
+    private final Counter hitCounter;
+
+    public SemanticResponseCache(MeterRegistry meterRegistry) {
+        this.hitSimilarity = DistributionSummary.builder("chat.semantic.cache.similarity")
+                .description("Similitud de los aciertos de la caché semántica")
+                .publishPercentiles(0.05, 0.5)
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("chat.semantic.cache.hits")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Busca la entrada más parecida con las mismas opciones. Devuelve una
+     * copia marcada como {@code cached} o {@code null}.
+     */
+    public ChatResponse get(PromptKey key) {
+        if (!accepts(key)) {
+            return null;
+        }
+        List<String> words = SimHash.words(key.message());
+        if (words.size() < minWords) {
+            return null;
+        }
+        long fingerprint = SimHash.fingerprint(words);
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            Match best = findSimilar(key, fingerprint, now, true);
+            if (best == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            hitCounter.increment();
+            hitSimilarity.record(best.similarity());
+            log.debug("Acierto semántico con similitud {}", best.similarity());
+            return best.entry().response().toBuilder()
+                    .cached(true)
+                    .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(PromptKey key, ChatResponse response) {
+        if (!accepts(key)) {
+            return;
+        }
+        List<String> words = SimHash.words(key.message());
+        if (words.size() < minWords) {
+            return;
+        }
+        long fingerprint = SimHash.fingerprint(words);
+        long bytes = estimateBytes(key, response);
+        if (bytes > maxBytes) {
+            log.debug("Respuesta demasiado grande para la caché semántica ({} bytes)", bytes);
+            return;
+        }
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            // Una entrada equivalente ya serviría esta petición: no se duplica.
+            if (findSimilar(key, fingerprint, now, false) != null) {
+                duplicates.increment();
+                return;
+            }
+            long id = nextId++;
+            Entry entry = new Entry(id, key, fingerprint, response, now + ttl.toNanos(), bytes);
+            entries.put(id, entry);
+            for (int band = 0; band < BANDS; band++) {
+                buckets.computeIfAbsent(bucketKey(key, fingerprint, band), _ -> new ArrayList<>(2)).add(id);
+            }
+            currentBytes += bytes;
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int size;
+        long bytes;
+        lock.lock();
+        try {
+            size = entries.size();
+            bytes = currentBytes;
+        } finally {
+            lock.unlock();
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        return Map.of(
+                "enabled", enabled,
+                "entries", size,
+                "bytes", bytes,
+                "hits", hitCount,
+                "misses", missCount,
+                "hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0,
+                "meanHitSimilarity", hitSimilarity.mean(),
+                "candidatesPerLookup", lookups > 0 ? (double) candidatesChecked.sum() / lookups : 0.0,
+                "evictions", evictions.sum(),
+                "duplicatesSkipped", duplicates.sum()
+        );
+    }
+
+    private boolean accepts(PromptKey key) {
+        return enabled && (key.temperature() == null || key.temperature() <= maxTemperature);
+    }
+
+    /**
+     * Entrada vigente más parecida con las mismas opciones, o {@code null} si
+     * ninguna llega al umbral. La marca como usada recientemente para el LRU.
+     * Solo las búsquedas de {@link #get} cuentan para {@code candidatesPerLookup}.
+     */
+    private Match findSimilar(PromptKey key, long fingerprint, long now, boolean lookup) {
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+        int checked = 0;
+
+        for (int band = 0; band < BANDS; band++) {
+            List<Long> bucket = buckets.get(bucketKey(key, fingerprint, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Long id : bucket) {
+                Entry candidate = entries.get(id);
+                checked++;
+                if (candidate == null || now - candidate.expiresAtNanos() > 0
+                        || !sameOptions(candidate.key(), key)) {
+                    continue;
+                }
+                double similarity = SimHash.similarity(fingerprint, candidate.fingerprint());
+                if (similarity >= bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        if (lookup) {
+            candidatesChecked.add(checked);
+        }
+
+        if (best == null) {
+            return null;
+        }
+        entries.get(best.id());
+        return new Match(best, bestSimilarity);
+    }
+
+    private void evictIfNeeded() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            boolean expired = now - eldest.expiresAtNanos() > 0;
+            if (!expired && entries.size() <= maxEntries && currentBytes <= maxBytes) {
+                break;
+            }
+            it.remove();
+            unindex(eldest);
+            currentBytes -= eldest.bytes();
+            evictions.increment();
+        }
+    }
+
+    private void unindex(Entry entry) {
+        for (int band = 0; band < BANDS; band++) {
+            long bucketKey = bucketKey(entry.key(), entry.fingerprint(), band);
+            List<Long> bucket = buckets.get(bucketKey);
+            if (bucket != null) {
+                bucket.remove(Long.valueOf(entry.id()));
+                if (bucket.isEmpty()) {
+                    buckets.remove(bucketKey);
+                }
+            }
+        }
+    }
+
+    private static long bucketKey(PromptKey key, long fingerprint, int band) {
+        long value = (fingerprint >>> (band * BAND_BITS)) & BAND_MASK;
+        long scope = Objects.hash(key.model(), key.temperature(), key.maxTokens());
+        return (scope << 32) ^ ((long) band << BAND_BITS) ^ value;
+    }
+
+    private static boolean sameOptions(PromptKey a, PromptKey b) {
+        return Objects.equals(a.model(), b.model())
+                && Objects.equals(a.temperature(), b.temperature())
+                && Objects.equals(a.maxTokens(), b.maxTokens());
+    }
+
+    private static long estimateBytes(PromptKey key, ChatResponse response) {
+        long chars = key.message().length();
+        if (response.getResponse() != null) {
+            chars += response.getResponse().length();
+        }
+        return ENTRY_OVERHEAD_BYTES + chars * 2;
+    }
+
+    private record Entry(long id, PromptKey key, long fingerprint, ChatResponse response, long expiresAtNanos,
+                         long bytes) {}
+
+    private record Match(Entry entry, double similarity) {}
+}
@@ -0,0 +1,20 @@
+package com.keniding.springia.chat.service;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * La petición se rechaza sin llamar a Gemini porque el servicio está
+ * saturado o el circuito está abierto. Se traduce a un 503 con
+ * {@code Retry-After}.
+ */
+@Getter
+public class ServiceOverloadedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public ServiceOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,83 @@
+package com.keniding.springia.chat.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Huella SimHash de 64 bits de un texto. Textos parecidos producen huellas
+ * con pocos bits distintos, así que la similitud se mide con la distancia de
+ * Hamming. Las características son las palabras normalizadas (minúsculas,
+ * sin tildes ni puntuación) y los pares de palabras consecutivas.
+ */
+final class SimHash {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    static List<String> words(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        normalized = DIACRITICS.matcher(normalized).replaceAll("").toLowerCase(Locale.ROOT);
+
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(normalized)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    static long fingerprint(List<String> words) {
+        int[] weights = new int[64];
+        for (int i = 0; i < words.size(); i++) {
+            long unigram = hash(FNV_OFFSET, words.get(i));
+            accumulate(weights, unigram);
+            if (i > 0) {
+                accumulate(weights, hash(hash(FNV_OFFSET, words.get(i - 1)) ^ 0x20, words.get(i)));
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    static double similarity(long a, long b) {
+        return 1.0 - Long.bitCount(a ^ b) / 64.0;
+    }
+
+    private static void accumulate(int[] weights, long featureHash) {
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((featureHash >>> bit) & 1) == 1 ? 1 : -1;
+        }
+    }
+
+    private static long hash(long seed, String value) {
+        long h = seed;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        // Mezcla final para repartir bien los bits altos.
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
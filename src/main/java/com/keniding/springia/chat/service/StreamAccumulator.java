@@ -0,0 +1,61 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.Generation;
+
+/**
+ * Acumula los fragmentos de {@code ChatModel.stream} en una única respuesta:
+ * concatena el texto y se queda con el último uso de tokens y motivo de fin
+ * informados (Gemini los envía en el último fragmento).
+ */
+class StreamAccumulator {
+
+    private final StringBuilder text;
+    private Usage usage;
+    private String finishReason;
+
+    StreamAccumulator() {
+        this.text = new StringBuilder();
+    }
+
+    private StreamAccumulator(StringBuilder text) {
+        this.text = text;
+    }
+
+    /** Solo uso de tokens y motivo de fin, sin guardar el texto. */
+    static StreamAccumulator metadataOnly() {
+        return new StreamAccumulator(null);
+    }
+
+    StreamAccumulator append(org.springframework.ai.chat.model.ChatResponse chunk) {
+        Generation result = chunk.getResult();
+        if (result != null) {
+            String fragment = result.getOutput().getText();
+            if (fragment != null && text != null) {
+                text.append(fragment);
+            }
+            if (result.getMetadata() != null && result.getMetadata().getFinishReason() != null) {
+                finishReason = result.getMetadata().getFinishReason();
+            }
+        }
+
+        Usage chunkUsage = chunk.getMetadata().getUsage();
+        if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+            usage = chunkUsage;
+        }
+        return this;
+    }
+
+    ChatResponse toChatResponse(String model, long responseTimeMs) {
+        return ChatResponse.builder()
+                .response(text != null ? text.toString() : null)
+                .model(model)
+                .tokensUsed(usage != null ? usage.getTotalTokens() : null)
+                .promptTokens(usage != null ? usage.getPromptTokens() : null)
+                .completionTokens(usage != null ? usage.getCompletionTokens() : null)
+                .responseTimeMs(responseTimeMs)
+                .finishReason(finishReason)
+                .build();
+    }
+}
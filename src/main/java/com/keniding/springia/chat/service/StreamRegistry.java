@@ -0,0 +1,367 @@
+package com.keniding.springia.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generaciones en streaming reanudables.
+ * <p>
+ * Cada generación se suscribe una sola vez a Gemini y guarda sus fragmentos
+ * en un búfer circular acotado. Los clientes reciben eventos con id
+ * {@code <streamId>:<secuencia>}; al reconectar con {@code Last-Event-ID} se
+ * reenvía lo que falte desde el búfer en lugar de volver a generar, y otros
+ * clientes pueden engancharse a la misma generación.
+ * <p>
+ * Si se van todos los clientes, la generación sigue durante
+ * {@code chat.stream.detach-grace} por si alguien reconecta; terminada, se
+ * conserva {@code chat.stream.retention} para las reconexiones tardías.
+ * El tope {@code chat.stream.max-streams} cuenta solo las generaciones en
+ * curso; las retenidas tienen el suyo, {@code chat.stream.max-retained}, y al
+ * superarlo se descartan primero las que terminaron antes. El búfer de cada
+ * generación crece según llegan fragmentos y al terminar se recorta a lo usado.
+ */
+@Slf4j
+@Component
+public class StreamRegistry {
+
+    @Value("${chat.stream.buffer-chunks:2048}")
+    private int bufferChunks;
+
+    @Value("${chat.stream.detach-grace:15s}")
+    private Duration detachGrace;
+
+    @Value("${chat.stream.retention:60s}")
+    private Duration retention;
+
+    @Value("${chat.stream.max-streams:1000}")
+    private int maxStreams;
+
+    @Value("${chat.stream.max-retained:1000}")
+    private int maxRetained;
+
+    private static final int INITIAL_RING = 16;
+
+    private final ConcurrentHashMap<String, Generation> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    /** Generaciones terminadas y aún retenidas, de la más antigua a la más reciente. */
+    private final ConcurrentLinkedQueue<Generation> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retained = new AtomicInteger();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder attached = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * Arranca una generación nueva a partir de {@code source} y devuelve sus
+     * eventos desde el principio. La generación se registra al suscribirse:
+     * un Flux que nadie consume no ocupa sitio.
+     */
+    public Flux<StreamEvent> start(Flux<StreamEvent> source) {
+        if (running.get() >= maxStreams) {
+            throw overloaded();
+        }
+        return Flux.defer(() -> {
+            if (running.incrementAndGet() > maxStreams) {
+                running.decrementAndGet();
+                return Flux.error(overloaded());
+            }
+            String streamId = UUID.randomUUID().toString();
+            Generation generation = new Generation(streamId, bufferChunks);
+            streams.put(streamId, generation);
+            started.increment();
+
+            // Se suscribe el cliente antes de arrancar para no perder el primer fragmento.
+            Flux<StreamEvent> events = generation.events(-1);
+            return events.doOnSubscribe(_ -> generation.startOnce(source));
+        });
+    }
+
+    private ServiceOverloadedException overloaded() {
+        return new ServiceOverloadedException("Demasiadas generaciones en streaming activas", detachGrace);
+    }
+
+    /**
+     * Continúa una generación a partir del último evento recibido. Vacío si
+     * el id no es válido o la generación ya no está disponible.
+     */
+    public Optional<Flux<StreamEvent>> resume(String lastEventId) {
+        int separator = lastEventId.lastIndexOf(':');
+        if (separator <= 0) {
+            return Optional.empty();
+        }
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        Generation generation = streams.get(lastEventId.substring(0, separator));
+        if (generation == null) {
+            return Optional.empty();
+        }
+        resumed.increment();
+        return Optional.of(generation.events(lastSeq));
+    }
+
+    /** Engancha un cliente más a una generación en curso, desde el principio del búfer. */
+    public Optional<Flux<StreamEvent>> attach(String streamId) {
+        Generation generation = streams.get(streamId);
+        if (generation == null) {
+            return Optional.empty();
+        }
+        attached.increment();
+        return Optional.of(generation.events(-1));
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "active", running.get(),
+                "retained", retained.get(),
+                "started", started.sum(),
+                "resumed", resumed.sum(),
+                "attached", attached.sum(),
+                "abandoned", abandoned.sum(),
+                "evicted", evicted.sum()
+        );
+    }
+
+    /** Retiene una generación terminada y descarta las más antiguas por encima del tope. */
+    private void retain(Generation generation) {
+        finished.add(generation);
+        retained.incrementAndGet();
+        while (retained.get() > maxRetained) {
+            Generation oldest = finished.poll();
+            if (oldest == null) {
+                break;
+            }
+            retained.decrementAndGet();
+            streams.remove(oldest.streamId, oldest);
+            evicted.increment();
+        }
+    }
+
+    /** Fin del plazo de retención; no hace nada si ya se descartó por el tope. */
+    private void expire(Generation generation) {
+        // Caducan en el orden en que terminaron, así que suele estar en cabeza.
+        if (finished.remove(generation)) {
+            retained.decrementAndGet();
+            streams.remove(generation.streamId, generation);
+        }
+    }
+
+    /**
+     * Evento de una generación. {@code id} identifica generación y posición
+     * (lo asigna el registro); {@code event} es {@code null} para el texto y
+     * nombra los eventos estructurados, como el resumen de uso final.
+     */
+    public record StreamEvent(String id, String event, Object data) {
+
+        public static StreamEvent text(String text) {
+            return new StreamEvent(null, null, text);
+        }
+
+        public static StreamEvent of(String event, Object data) {
+            return new StreamEvent(null, event, data);
+        }
+
+        public boolean isText() {
+            return event == null;
+        }
+
+        StreamEvent withId(String id) {
+            return new StreamEvent(id, event, data);
+        }
+    }
+
+    /** La posición pedida ya salió del búfer: no se puede reanudar sin huecos. */
+    public static class StreamResumeException extends RuntimeException {
+        public StreamResumeException(String message) {
+            super(message);
+        }
+    }
+
+    private final class Generation {
+        private final String streamId;
+        private final int capacity;
+        private StreamEvent[] ring;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<FluxSink<StreamEvent>> sinks = new ArrayList<>();
+
+        private long nextSeq;
+        private boolean started;
+        private boolean done;
+        private Throwable error;
+        private Disposable upstream;
+        private Disposable pendingCancel;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Generation(String streamId, int capacity) {
+            this.streamId = streamId;
+            this.capacity = capacity;
+            this.ring = new StreamEvent[Math.min(capacity, INITIAL_RING)];
+        }
+
+        void startOnce(Flux<StreamEvent> source) {
+            lock.lock();
+            try {
+                if (started) {
+                    return;
+                }
+                started = true;
+            } finally {
+                lock.unlock();
+            }
+            // La suscripción no depende de ningún cliente: sigue aunque se desconecten.
+            upstream = source.subscribe(this::onNext, this::onError, this::onComplete);
+        }
+
+        Flux<StreamEvent> events(long afterSeq) {
+            return Flux.create(sink -> {
+                register(sink, afterSeq);
+                sink.onDispose(() -> unregister(sink));
+            });
+        }
+
+        private void register(FluxSink<StreamEvent> sink, long afterSeq) {
+            lock.lock();
+            try {
+                long oldest = Math.max(0, nextSeq - ring.length);
+                if (afterSeq + 1 < oldest) {
+                    sink.error(new StreamResumeException(
+                            "El fragmento " + (afterSeq + 1) + " ya no está disponible en el búfer"));
+                    return;
+                }
+                // La repetición y el alta van bajo el cerrojo: ningún fragmento se pierde ni se duplica.
+                for (long seq = afterSeq + 1; seq < nextSeq; seq++) {
+                    sink.next(ring[(int) (seq % ring.length)]);
+                }
+                if (done) {
+                    terminate(sink);
+                    return;
+                }
+                sinks.add(sink);
+                if (pendingCancel != null) {
+                    pendingCancel.dispose();
+                    pendingCancel = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unregister(FluxSink<StreamEvent> sink) {
+            lock.lock();
+            try {
+                if (!sinks.remove(sink) || !sinks.isEmpty() || done) {
+                    return;
+                }
+                pendingCancel = Schedulers.parallel().schedule(
+                        this::cancelIfDetached, detachGrace.toMillis(), TimeUnit.MILLISECONDS);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void cancelIfDetached() {
+            lock.lock();
+            try {
+                if (!sinks.isEmpty() || done) {
+                    return;
+                }
+                done = true;
+            } finally {
+                lock.unlock();
+            }
+            abandoned.increment();
+            release();
+            log.debug("Generación {} cancelada: ningún cliente reconectó", streamId);
+            if (upstream != null) {
+                upstream.dispose();
+            }
+            streams.remove(streamId, this);
+        }
+
+        private void onNext(StreamEvent next) {
+            lock.lock();
+            try {
+                StreamEvent event = next.withId(streamId + ":" + nextSeq);
+                // Hasta llenarse no da la vuelta: la posición es la secuencia y copiar la conserva.
+                if (nextSeq == ring.length && ring.length < capacity) {
+                    ring = Arrays.copyOf(ring, Math.min(capacity, ring.length * 2));
+                }
+                ring[(int) (nextSeq % ring.length)] = event;
+                nextSeq++;
+                for (FluxSink<StreamEvent> sink : sinks) {
+                    sink.next(event);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onError(Throwable e) {
+            finish(e);
+        }
+
+        private void onComplete() {
+            finish(null);
+        }
+
+        private void finish(Throwable e) {
+            lock.lock();
+            try {
+                done = true;
+                error = e;
+                for (FluxSink<StreamEvent> sink : List.copyOf(sinks)) {
+                    terminate(sink);
+                }
+                sinks.clear();
+                if (nextSeq < ring.length) {
+                    ring = Arrays.copyOf(ring, (int) nextSeq);
+                }
+            } finally {
+                lock.unlock();
+            }
+            release();
+            retain(this);
+            Schedulers.parallel().schedule(() -> expire(this), retention.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        /** Deja de contar como en curso; una sola vez, termine como termine. */
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                running.decrementAndGet();
+            }
+        }
+
+        private void terminate(FluxSink<StreamEvent> sink) {
+            if (error != null) {
+                sink.error(error);
+            } else {
+                sink.complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.keniding.springia.chat.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Estimación local del número de tokens de un texto, sin llamar a Gemini.
+ * <p>
+ * Recorre el texto una sola vez sin crear objetos: cada tramo de letras o
+ * dígitos cuenta como un token por cada ~4 caracteres, cada signo de
+ * puntuación o símbolo como un token y cada ideograma (CJK, kana, hangul)
+ * como un token. Los espacios no cuentan. Es una cota aproximada y algo
+ * conservadora, suficiente para validar límites y estimar costes.
+ */
+@Component
+public class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    public long estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+
+        long tokens = 0;
+        int run = 0;
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c < 0x80) {
+                if (isAsciiWordChar(c)) {
+                    run++;
+                    continue;
+                }
+                tokens += runTokens(run);
+                run = 0;
+                if (c > ' ') {
+                    tokens++;
+                }
+                continue;
+            }
+
+            if (Character.isHighSurrogate(c) && i + 1 < length) {
+                // Emojis y demás fuera del plano básico: un token por carácter.
+                tokens += runTokens(run) + 1;
+                run = 0;
+                i++;
+                continue;
+            }
+
+            if (isIdeographic(c)) {
+                tokens += runTokens(run) + 1;
+                run = 0;
+            } else if (Character.isLetterOrDigit(c)) {
+                run++;
+            } else {
+                tokens += runTokens(run);
+                run = 0;
+                if (!Character.isWhitespace(c)) {
+                    tokens++;
+                }
+            }
+        }
+        return tokens + runTokens(run);
+    }
+
+    private static long runTokens(int run) {
+        return (run + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static boolean isAsciiWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isIdeographic(char c) {
+        return Character.isIdeographic(c)
+                || (c >= 0x3040 && c <= 0x30FF)
+                || (c >= 0xAC00 && c <= 0xD7AF);
+    }
+}
@@ -0,0 +1,246 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker por modelo sobre las llamadas a Gemini.
+ * <p>
+ * Lleva una ventana deslizante con el resultado de las últimas llamadas. Si
+ * la tasa de fallos del upstream (5xx, timeouts, 429) supera el umbral, el
+ * circuito se abre y las peticiones fallan en el acto durante un tiempo.
+ * Después deja pasar unas pocas de prueba: si salen bien se cierra, si no
+ * vuelve a abrirse. Una llamada de prueba que no llega a Gemini (rechazo
+ * local, cancelación) devuelve su hueco con {@link #release}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpstreamCircuitBreaker {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.circuit-breaker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.circuit-breaker.window-size:50}")
+    private int windowSize;
+
+    @Value("${chat.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${chat.circuit-breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${chat.circuit-breaker.open-duration:30s}")
+    private Duration openDuration;
+
+    @Value("${chat.circuit-breaker.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    /** Resultado de {@link #checkAvailable} cuando la llamada no es de prueba. */
+    public static final long NO_TRIAL = -1;
+
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Comprueba que el circuito del modelo admite la llamada o lanza
+     * {@link ServiceOverloadedException} con el tiempo restante de apertura.
+     * Devuelve el turno de prueba ocupado, o {@link #NO_TRIAL}; quien no
+     * llegue a registrar un resultado debe devolverlo con {@link #release}.
+     */
+    public long checkAvailable(String model) {
+        return enabled ? circuitFor(model).tryPass() : NO_TRIAL;
+    }
+
+    /**
+     * Devuelve un hueco de prueba sin contar resultado: la llamada se rechazó
+     * en local o se canceló antes de saber si Gemini responde.
+     */
+    public void release(String model, long trial) {
+        if (enabled && trial != NO_TRIAL) {
+            circuitFor(model).releaseTrial(trial);
+        }
+    }
+
+    public boolean isAvailable(String model) {
+        return !enabled || circuitFor(model).state() != State.OPEN;
+    }
+
+    public void onSuccess(String model) {
+        if (enabled) {
+            circuitFor(model).record(false);
+        }
+    }
+
+    public void onError(String model, UpstreamError cause) {
+        if (enabled) {
+            // Los errores del cliente (4xx, 404) no dicen nada de la salud del upstream.
+            circuitFor(model).record(cause.isRetryable());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        circuits.forEach((model, circuit) -> stats.put(model, circuit.stats()));
+        return stats;
+    }
+
+    private Circuit circuitFor(String model) {
+        return circuits.computeIfAbsent(model, Circuit::new);
+    }
+
+    private final class Circuit {
+        private final String model;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final boolean[] outcomes = new boolean[windowSize];
+        private int position;
+        private int recorded;
+        private int failures;
+
+        private volatile State state = State.CLOSED;
+        private long openedAt;
+        private int trialCalls;
+        /** Cambia en cada paso a HALF_OPEN; descarta devoluciones de una prueba anterior. */
+        private long trialRound;
+
+        private Circuit(String model) {
+            this.model = model;
+            meterRegistry.gauge("chat.circuit.state",
+                    Tags.of("model", model),
+                    this, c -> c.state.ordinal());
+        }
+
+        private State state() {
+            return state;
+        }
+
+        private long tryPass() {
+            if (state == State.CLOSED) {
+                return NO_TRIAL;
+            }
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    long remaining = openDuration.toNanos() - (System.nanoTime() - openedAt);
+                    if (remaining > 0) {
+                        throw new ServiceOverloadedException(
+                                "Gemini no está respondiendo bien (" + model + "); circuito abierto",
+                                Duration.ofNanos(remaining).withNanos(0).plusSeconds(1));
+                    }
+                    transition(State.HALF_OPEN);
+                    trialCalls = 0;
+                    trialRound++;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trialCalls >= halfOpenCalls) {
+                        throw new ServiceOverloadedException(
+                                "Circuito en prueba para " + model + ", reintenta en unos segundos",
+                                Duration.ofSeconds(1));
+                    }
+                    trialCalls++;
+                    return trialRound;
+                }
+                return NO_TRIAL;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void releaseTrial(long round) {
+            lock.lock();
+            try {
+                if (state == State.HALF_OPEN && round == trialRound && trialCalls > 0) {
+                    trialCalls--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void record(boolean failure) {
+            lock.lock();
+            try {
+                if (state == State.HALF_OPEN) {
+                    if (failure) {
+                        open();
+                    } else if (--trialCalls <= 0) {
+                        reset();
+                        transition(State.CLOSED);
+                    }
+                    return;
+                }
+                if (state == State.OPEN) {
+                    return;
+                }
+
+                if (recorded == windowSize) {
+                    if (outcomes[position]) {
+                        failures--;
+                    }
+                } else {
+                    recorded++;
+                }
+                outcomes[position] = failure;
+                if (failure) {
+                    failures++;
+                }
+                position = (position + 1) % windowSize;
+
+                if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                    open();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void open() {
+            openedAt = System.nanoTime();
+            reset();
+            transition(State.OPEN);
+        }
+
+        private void reset() {
+            position = 0;
+            recorded = 0;
+            failures = 0;
+        }
+
+        private void transition(State next) {
+            if (state != next) {
+                log.warn("Circuito de {}: {} -> {}", model, state, next);
+                state = next;
+            }
+        }
+
+        private Map<String, Object> stats() {
+            lock.lock();
+            try {
+                return Map.of(
+                        "state", state.name(),
+                        "calls", recorded,
+                        "failures", failures,
+                        "failureRate", recorded > 0 ? (double) failures / recorded : 0.0
+                );
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.keniding.springia.chat.service;
+
+import com.google.genai.errors.ApiException;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Clasificación de los errores de Gemini por causa. Recorre la cadena de
+ * causas buscando el código HTTP de la SDK de Google GenAI y, si no lo
+ * encuentra, recurre al texto del mensaje.
+ */
+public enum UpstreamError {
+    RATE_LIMITED("429"),
+    NOT_FOUND("404"),
+    TIMEOUT("timeout"),
+    CLIENT_ERROR("4xx"),
+    SERVER_ERROR("5xx"),
+    UNKNOWN("unknown");
+
+    private final String tag;
+
+    UpstreamError(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+
+    public boolean isRetryable() {
+        return this == RATE_LIMITED || this == SERVER_ERROR || this == TIMEOUT;
+    }
+
+    public static UpstreamError classify(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ApiException apiException) {
+                return fromStatus(apiException.code());
+            }
+            if (t instanceof TimeoutException
+                    || t instanceof SocketTimeoutException
+                    || t instanceof HttpTimeoutException) {
+                return TIMEOUT;
+            }
+        }
+        return fromMessage(error.getMessage());
+    }
+
+    static UpstreamError fromStatus(int status) {
+        if (status == 429) {
+            return RATE_LIMITED;
+        }
+        if (status == 404) {
+            return NOT_FOUND;
+        }
+        if (status == 408 || status == 504) {
+            return TIMEOUT;
+        }
+        if (status >= 500) {
+            return SERVER_ERROR;
+        }
+        if (status >= 400) {
+            return CLIENT_ERROR;
+        }
+        return UNKNOWN;
+    }
+
+    private static UpstreamError fromMessage(String message) {
+        if (message == null) {
+            return UNKNOWN;
+        }
+        if (message.contains("429")) {
+            return RATE_LIMITED;
+        }
+        if (message.contains("404")) {
+            return NOT_FOUND;
+        }
+        if (message.toLowerCase().contains("timeout") || message.toLowerCase().contains("timed out")) {
+            return TIMEOUT;
+        }
+        return UNKNOWN;
+    }
+}
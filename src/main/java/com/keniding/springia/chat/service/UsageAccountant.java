@@ -0,0 +1,286 @@
+package com.keniding.springia.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Contabilidad de tokens y coste por modelo y por llamante.
+ * <p>
+ * El registro no toma cerrojos: cada agregado son contadores {@link LongAdder}
+ * del minuto en curso. Al cambiar de minuto, el primer hilo que lo nota vuelca
+ * esos contadores en 60 casillas por minuto y 24 por hora, de donde salen las
+ * ventanas de la última hora y el último día.
+ * <p>
+ * El llamante sale de la cabecera {@code X-Caller-Id}; los precios, de
+ * {@code chat.pricing.models.<modelo>.*} (dólares por millón de tokens).
+ */
+@Component
+@RequiredArgsConstructor
+public class UsageAccountant {
+
+    public static final String CALLER_HEADER = "X-Caller-Id";
+    public static final String ANONYMOUS = "anonymous";
+    private static final String OTHER_CALLERS = "other";
+    private static final String UNKNOWN_MODEL = "unknown";
+
+    private final Environment environment;
+
+    @Value("${chat.pricing.default.input-per-1m:0.30}")
+    private double defaultInputPrice;
+
+    @Value("${chat.pricing.default.output-per-1m:2.50}")
+    private double defaultOutputPrice;
+
+    @Value("${chat.usage.max-callers:1000}")
+    private int maxCallers;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final ConcurrentHashMap<String, Pricing> pricing = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Usage> byModel = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Usage> byCaller = new ConcurrentHashMap<>();
+
+    /**
+     * Llamante de la petición HTTP en curso. Hay que leerlo en el hilo de la
+     * petición, antes de pasar a otros hilos.
+     */
+    public static String currentCaller() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            String caller = attributes.getRequest().getHeader(CALLER_HEADER);
+            if (caller != null && !caller.isBlank()) {
+                return caller.strip();
+            }
+        }
+        return ANONYMOUS;
+    }
+
+    public void record(String model, String caller, Integer promptTokens, Integer completionTokens) {
+        model = model != null ? model : UNKNOWN_MODEL;
+        long prompt = promptTokens != null ? promptTokens : 0;
+        long completion = completionTokens != null ? completionTokens : 0;
+        long costNanos = pricingFor(model).costNanos(prompt, completion);
+        long minute = currentMinute();
+
+        byModel.computeIfAbsent(model, _ -> new Usage(minute)).add(minute, prompt, completion, costNanos);
+        callerUsage(caller, minute).add(minute, prompt, completion, costNanos);
+    }
+
+    /** Coste en dólares según la tabla de precios del modelo. */
+    public double cost(String model, long promptTokens, long completionTokens) {
+        return pricingFor(model).costNanos(promptTokens, completionTokens) / 1e9;
+    }
+
+    public Map<String, Object> report(String caller) {
+        long minute = currentMinute();
+        Map<String, Object> report = new LinkedHashMap<>();
+        if (caller != null) {
+            Usage usage = byCaller.get(caller);
+            report.put("caller", caller);
+            report.put("usage", usage != null ? usage.windows(minute) : Usage.empty());
+            return report;
+        }
+
+        Map<String, Object> models = new TreeMap<>();
+        byModel.forEach((model, usage) -> models.put(model, usage.windows(minute)));
+        Map<String, Object> callers = new TreeMap<>();
+        byCaller.forEach((name, usage) -> callers.put(name, usage.windows(minute)));
+        Map<String, Object> prices = new TreeMap<>();
+        pricing.forEach((model, price) -> prices.put(model, Map.of(
+                "inputPer1M", price.inputPer1M(),
+                "outputPer1M", price.outputPer1M())));
+
+        report.put("models", models);
+        report.put("callers", callers);
+        report.put("pricing", prices);
+        return report;
+    }
+
+    private Usage callerUsage(String caller, long minute) {
+        Usage usage = byCaller.get(caller);
+        if (usage != null) {
+            return usage;
+        }
+        // Tope de llamantes distintos para que una cabecera arbitraria no haga crecer el mapa.
+        if (byCaller.size() >= maxCallers) {
+            return byCaller.computeIfAbsent(OTHER_CALLERS, _ -> new Usage(minute));
+        }
+        return byCaller.computeIfAbsent(caller, _ -> new Usage(minute));
+    }
+
+    private Pricing pricingFor(String model) {
+        return pricing.computeIfAbsent(model != null ? model : UNKNOWN_MODEL, m -> new Pricing(
+                environment.getProperty("chat.pricing.models." + m + ".input-per-1m",
+                        Double.class, defaultInputPrice),
+                environment.getProperty("chat.pricing.models." + m + ".output-per-1m",
+                        Double.class, defaultOutputPrice)));
+    }
+
+    private long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(clock.millis());
+    }
+
+    private record Pricing(double inputPer1M, double outputPer1M) {
+        /** Nanodólares: un precio de 1 $/1M equivale a 1000 por token. */
+        long costNanos(long promptTokens, long completionTokens) {
+            return Math.round(promptTokens * inputPer1M * 1000 + completionTokens * outputPer1M * 1000);
+        }
+    }
+
+    /**
+     * Agregado de un modelo o un llamante. Los contadores del minuto en curso
+     * son {@link LongAdder}; las casillas cerradas solo se tocan bajo el
+     * cerrojo, una vez por minuto al volcar y al leer. El minuto solo avanza:
+     * un hilo que leyó el reloj justo antes del cambio y llega después cuenta
+     * en el minuto nuevo en lugar de hacer retroceder el agregado.
+     */
+    private static final class Usage {
+        private static final int REQUESTS = 0;
+        private static final int PROMPT = 1;
+        private static final int COMPLETION = 2;
+        private static final int COST = 3;
+        private static final int FIELDS = 4;
+
+        private final LongAdder[] current = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+        private final LongAdder[] total = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+        private volatile long currentMinute;
+
+        private final ReentrantLock rollLock = new ReentrantLock();
+        private final long[][] minutes = new long[60][FIELDS];
+        private final long[] minuteIds = new long[60];
+        private final long[][] hours = new long[24][FIELDS];
+        private final long[] hourIds = new long[24];
+
+        Usage(long minute) {
+            currentMinute = minute;
+            Arrays.fill(minuteIds, -1);
+            Arrays.fill(hourIds, -1);
+        }
+
+        void add(long minute, long prompt, long completion, long costNanos) {
+            if (minute > currentMinute) {
+                roll(minute);
+            }
+            current[REQUESTS].increment();
+            current[PROMPT].add(prompt);
+            current[COMPLETION].add(completion);
+            current[COST].add(costNanos);
+            total[REQUESTS].increment();
+            total[PROMPT].add(prompt);
+            total[COMPLETION].add(completion);
+            total[COST].add(costNanos);
+        }
+
+        Map<String, Object> windows(long now) {
+            rollLock.lock();
+            try {
+                rollLocked(now);
+                long minute = currentMinute;
+                long[] lastMinute = new long[FIELDS];
+                long[] lastHour = new long[FIELDS];
+                long[] lastDay = new long[FIELDS];
+                for (int f = 0; f < FIELDS; f++) {
+                    lastMinute[f] = current[f].sum();
+                }
+                for (int i = 0; i < 60; i++) {
+                    if (minuteIds[i] > minute - 60) {
+                        addInto(lastHour, minutes[i]);
+                    }
+                }
+                long hour = minute / 60;
+                for (int i = 0; i < 24; i++) {
+                    if (hourIds[i] > hour - 24) {
+                        addInto(lastDay, hours[i]);
+                    }
+                }
+                addInto(lastHour, lastMinute);
+                addInto(lastDay, lastMinute);
+
+                long[] all = new long[FIELDS];
+                for (int f = 0; f < FIELDS; f++) {
+                    all[f] = total[f].sum();
+                }
+
+                Map<String, Object> windows = new LinkedHashMap<>();
+                windows.put("minute", toMap(lastMinute));
+                windows.put("hour", toMap(lastHour));
+                windows.put("day", toMap(lastDay));
+                windows.put("total", toMap(all));
+                return windows;
+            } finally {
+                rollLock.unlock();
+            }
+        }
+
+        static Map<String, Object> empty() {
+            return Map.of();
+        }
+
+        private void roll(long minute) {
+            rollLock.lock();
+            try {
+                rollLocked(minute);
+            } finally {
+                rollLock.unlock();
+            }
+        }
+
+        /**
+         * Cierra el minuto en curso. Los incrementos que lleguen mientras
+         * tanto con el minuto anterior se cuentan en el nuevo; es un desfase
+         * despreciable a cambio de no bloquear el registro.
+         */
+        private void rollLocked(long minute) {
+            if (minute <= currentMinute) {
+                return;
+            }
+            long closed = currentMinute;
+            long[] values = new long[FIELDS];
+            for (int f = 0; f < FIELDS; f++) {
+                values[f] = current[f].sumThenReset();
+            }
+
+            int slot = (int) (closed % 60);
+            minuteIds[slot] = closed;
+            minutes[slot] = values;
+
+            long closedHour = closed / 60;
+            int hourSlot = (int) (closedHour % 24);
+            if (hourIds[hourSlot] != closedHour) {
+                hourIds[hourSlot] = closedHour;
+                hours[hourSlot] = new long[FIELDS];
+            }
+            addInto(hours[hourSlot], values);
+
+            currentMinute = minute;
+        }
+
+        private static void addInto(long[] target, long[] values) {
+            for (int f = 0; f < FIELDS; f++) {
+                target[f] += values[f];
+            }
+        }
+
+        private static Map<String, Object> toMap(long[] values) {
+            return Map.of(
+                    "requests", values[REQUESTS],
+                    "promptTokens", values[PROMPT],
+                    "completionTokens", values[COMPLETION],
+                    "cost", values[COST] / 1e9
+            );
+        }
+    }
+}
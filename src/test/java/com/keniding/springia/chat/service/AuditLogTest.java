@@ -0,0 +1,141 @@
+package com.keniding.springia.chat.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesBatchesAcrossSegmentsAndReadsThemBack() throws IOException {
+        AuditLog auditLog = auditLog(DataSize.ofBytes(512));
+        auditLog.start();
+        for (int i = 0; i < 50; i++) {
+            auditLog.record(record(i));
+        }
+        auditLog.stop();
+
+        List<AuditRecord> read = new ArrayList<>();
+        List<Path> segments = AuditLogReader.segments(dir);
+        for (Path segment : segments) {
+            AuditLogReader.read(segment, read::add);
+        }
+
+        assertThat(segments).hasSizeGreaterThan(1);
+        assertThat(read).containsExactlyElementsOf(
+                IntStream.range(0, 50).mapToObj(AuditLogTest::record).toList());
+        assertThat(auditLog.stats()).containsEntry("written", 50L).containsEntry("dropped", 0L);
+    }
+
+    @Test
+    void continuesNumberingAfterRestart() throws IOException {
+        AuditLog first = auditLog(DataSize.ofMegabytes(1));
+        first.start();
+        first.record(record(1));
+        first.stop();
+
+        AuditLog second = auditLog(DataSize.ofMegabytes(1));
+        second.start();
+        second.record(record(2));
+        second.stop();
+
+        List<Path> segments = AuditLogReader.segments(dir);
+        assertThat(segments).extracting(AuditLogReader::sequence).containsExactly(1L, 2L);
+        List<AuditRecord> read = new ArrayList<>();
+        AuditLogReader.read(segments.get(1), read::add);
+        assertThat(read).containsExactly(record(2));
+    }
+
+    @Test
+    void writerSurvivesSegmentCreationFailures() throws IOException {
+        AuditLog auditLog = auditLog(DataSize.ofMegabytes(1));
+        auditLog.start();
+        Files.delete(dir);
+        auditLog.record(record(1));
+
+        awaitUntil(() -> "failing".equals(auditLog.stats().get("writer")));
+        assertThat(auditLog.stats()).containsKey("lastError").containsEntry("written", 0L);
+
+        Files.createDirectories(dir);
+        awaitUntil(() -> "ok".equals(auditLog.stats().get("writer")));
+        assertThat(auditLog.stats()).containsEntry("written", 1L);
+        auditLog.record(record(2));
+        auditLog.stop();
+
+        List<AuditRecord> read = new ArrayList<>();
+        for (Path segment : AuditLogReader.segments(dir)) {
+            AuditLogReader.read(segment, read::add);
+        }
+        assertThat(read).containsExactly(record(1), record(2));
+    }
+
+    @Test
+    void blockingRecordDropsAfterTheTimeout() {
+        AuditLog auditLog = auditLog(DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(auditLog, "queueCapacity", 0);
+        ReflectionTestUtils.setField(auditLog, "blockWhenFull", true);
+        ReflectionTestUtils.setField(auditLog, "blockTimeout", Duration.ofMillis(50));
+        auditLog.start();
+
+        long startNanos = System.nanoTime();
+        auditLog.record(record(1));
+        long waitedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        auditLog.stop();
+
+        assertThat(waitedMillis).isGreaterThanOrEqualTo(50);
+        assertThat(auditLog.stats()).containsEntry("dropped", 1L).containsEntry("written", 0L);
+    }
+
+    @Test
+    void exportsEscapedJson() {
+        AuditRecord record = new AuditRecord(0, 12, 3, -1, AuditRecord.OK, AuditRecord.CHAT, "a",
+                "flash", null, "dice \"hola\"\n", "¿qué?");
+
+        assertThat(AuditLogReader.toJson(record)).isEqualTo(
+                "{\"timestamp\":\"1970-01-01T00:00:00Z\",\"elapsedMs\":12,\"status\":\"ok\",\"kind\":\"chat\","
+                        + "\"caller\":\"a\",\"model\":\"flash\",\"promptTokens\":3,"
+                        + "\"request\":\"dice \\\"hola\\\"\\n\",\"response\":\"¿qué?\"}");
+    }
+
+    private AuditLog auditLog(DataSize segmentSize) {
+        AuditLog auditLog = new AuditLog();
+        ReflectionTestUtils.setField(auditLog, "enabled", true);
+        ReflectionTestUtils.setField(auditLog, "dir", dir);
+        ReflectionTestUtils.setField(auditLog, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(auditLog, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(auditLog, "batchSize", 8);
+        ReflectionTestUtils.setField(auditLog, "flushInterval", Duration.ofMillis(10));
+        return auditLog;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("tiempo de espera agotado").isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private static AuditRecord record(int i) {
+        return new AuditRecord(1_700_000_000_000L + i, i, 10 + i, 20 + i, AuditRecord.OK, AuditRecord.CHAT,
+                "caller-" + (i % 3), "gemini-2.5-flash", i % 2 == 0 ? null : "s-" + i,
+                "pregunta número " + i, "respuesta ñ " + i);
+    }
+}
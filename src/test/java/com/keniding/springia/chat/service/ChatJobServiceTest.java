@@ -0,0 +1,161 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatJob;
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.dto.ChatResponse;
+import com.keniding.springia.chat.service.JobJournal.Entry;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatJobServiceTest {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void requeuesJobThatWasRunningWhenTheProcessDied() {
+        Path path = dir.resolve("jobs.journal");
+        Instant now = Instant.now();
+        try (JobJournal journal = new JobJournal(path, jsonMapper, false)) {
+            journal.open();
+            journal.append(Entry.submit("running", 1, Priority.HIGH, "a", request("uno"), now), () -> {});
+            journal.append(Entry.event(JobJournal.START, "running", now), () -> {});
+            journal.append(Entry.submit("done", 2, Priority.NORMAL, "a", request("dos"), now), () -> {});
+            journal.append(Entry.event(JobJournal.START, "done", now), () -> {});
+            journal.append(Entry.fail("done", "boom", now), () -> {});
+        }
+
+        ChatJobService service = service(path);
+        try {
+            assertThat(service.get("running")).get().extracting(ChatJob::getStatus).isEqualTo(ChatJob.STATUS_QUEUED);
+            assertThat(service.get("done")).get().extracting(ChatJob::getStatus).isEqualTo(ChatJob.STATUS_FAILED);
+            assertThat(service.stats()).containsEntry("queued", 1).containsEntry("recovered", 1L);
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "shutdown");
+        }
+    }
+
+    @Test
+    void compactionKeepsChangesMadeWhileItRuns() throws InterruptedException {
+        Path path = dir.resolve("jobs.journal");
+        ChatJobService service = service(path);
+        Map<String, String> expected = new ConcurrentHashMap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread compactor = Thread.ofPlatform().start(() -> {
+            while (running.get()) {
+                ReflectionTestUtils.invokeMethod(service, "compact");
+                LockSupport.parkNanos(1_000_000);
+            }
+        });
+        List<Thread> submitters = List.of(1, 2, 3, 4).stream()
+                .map(n -> Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        String id = service.submit(request(n + "-" + i), Priority.NORMAL, "a").getId();
+                        if (i % 2 == 0 && service.cancel(id)) {
+                            expected.put(id, ChatJob.STATUS_CANCELLED);
+                        } else {
+                            expected.put(id, ChatJob.STATUS_QUEUED);
+                        }
+                    }
+                }))
+                .toList();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        running.set(false);
+        compactor.join();
+        ReflectionTestUtils.invokeMethod(service, "shutdown");
+
+        ChatJobService recovered = service(path);
+        try {
+            assertThat(expected).hasSize(800);
+            expected.forEach((id, status) ->
+                    assertThat(recovered.get(id)).as(id).get().extracting(ChatJob::getStatus).isEqualTo(status));
+        } finally {
+            ReflectionTestUtils.invokeMethod(recovered, "shutdown");
+        }
+    }
+
+    @Test
+    void requeuesJobsRejectedByLocalQuota() {
+        AtomicInteger attempts = new AtomicInteger();
+        ChatService chatService = chatService(_ -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new QuotaScheduler.QuotaExceededException("Cuota local agotada", Duration.ofMillis(10));
+            }
+            return ChatResponse.builder().response("hola").build();
+        });
+        ChatJobService service = service(dir.resolve("jobs.journal"), chatService);
+        ReflectionTestUtils.setField(service, "workers", 1);
+        service.startWorkers();
+        try {
+            String id = service.submit(request("uno"), Priority.NORMAL, "a").getId();
+
+            awaitUntil(() -> service.get(id).map(ChatJob::getStatus)
+                    .filter(ChatJob.STATUS_SUCCEEDED::equals).isPresent());
+            assertThat(attempts).hasValue(2);
+            assertThat(service.stats()).containsEntry("succeeded", 1L).containsEntry("failed", 0L);
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "shutdown");
+        }
+    }
+
+    private ChatJobService service(Path path) {
+        return service(path, null);
+    }
+
+    private ChatJobService service(Path path, ChatService chatService) {
+        ChatJobService service = new ChatJobService(chatService, jsonMapper);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "journalPath", path);
+        ReflectionTestUtils.setField(service, "fsync", false);
+        ReflectionTestUtils.setField(service, "maxQueued", 10_000);
+        ReflectionTestUtils.setField(service, "resultTtl", Duration.ofHours(1));
+        ReflectionTestUtils.invokeMethod(service, "recover");
+        return service;
+    }
+
+    /** ChatService que solo responde a {@code execute}; el resto de dependencias no se usan. */
+    private static ChatService chatService(Function<ChatRequest, ChatResponse> answer) {
+        return new ChatService(null, null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null, null, null) {
+            @Override
+            public ChatResponse execute(ChatRequest request, Priority priority, String caller) {
+                return answer.apply(request);
+            }
+        };
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("tiempo de espera agotado").isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private static ChatRequest request(String message) {
+        return new ChatRequest(message, null, null, null);
+    }
+}
@@ -0,0 +1,71 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatResponseCacheTest {
+
+    private ChatResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChatResponseCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1_000_000L);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(cache, "maxTemperature", 1.0);
+    }
+
+    @Test
+    void hitReturnsCopyMarkedAsCached() {
+        PromptKey key = PromptKey.of("  Hola   mundo ", "gemini", 0.7, 100);
+        cache.put(key, response("hola"));
+
+        ChatResponse hit = cache.get(PromptKey.of("Hola mundo", "gemini", 0.7, 100));
+
+        assertThat(hit).isNotNull();
+        assertThat(hit.getResponse()).isEqualTo("hola");
+        assertThat(hit.getCached()).isTrue();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        PromptKey a = PromptKey.of("a", "gemini", 0.7, 100);
+        PromptKey b = PromptKey.of("b", "gemini", 0.7, 100);
+        PromptKey c = PromptKey.of("c", "gemini", 0.7, 100);
+
+        cache.put(a, response("a"));
+        cache.put(b, response("b"));
+        cache.get(a);
+        cache.put(c, response("c"));
+
+        assertThat(cache.get(a)).isNotNull();
+        assertThat(cache.get(b)).isNull();
+        assertThat(cache.stats()).containsEntry("evictions", 1L);
+    }
+
+    @Test
+    void skipsHighTemperatureRequests() {
+        PromptKey key = PromptKey.of("a", "gemini", 1.5, 100);
+
+        assertThat(cache.isCacheable(key)).isFalse();
+        cache.put(key, response("a"));
+        assertThat(cache.stats()).containsEntry("entries", 0);
+    }
+
+    private static ChatResponse response(String text) {
+        return ChatResponse.builder()
+                .response(text)
+                .model("gemini")
+                .tokensUsed(10)
+                .responseTimeMs(100L)
+                .build();
+    }
+}
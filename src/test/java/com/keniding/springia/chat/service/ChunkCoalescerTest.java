@@ -0,0 +1,105 @@
+package com.keniding.springia.chat.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkCoalescerTest {
+
+    private final Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    @Test
+    void firstFragmentPassesImmediately() {
+        subscribe(coalescer(Duration.ofSeconds(10), 256));
+
+        upstream.tryEmitNext("Hola");
+
+        assertThat(received).containsExactly("Hola");
+    }
+
+    @Test
+    void flushesWhenPendingReachesMaxChars() {
+        subscribe(coalescer(Duration.ofSeconds(10), 4));
+
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("bc");
+        assertThat(received).containsExactly("a");
+        upstream.tryEmitNext("de");
+
+        assertThat(received).containsExactly("a", "bcde");
+    }
+
+    @Test
+    void flushesWhenTheWindowExpires() {
+        subscribe(coalescer(Duration.ofMillis(100), 256));
+
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("b");
+        upstream.tryEmitNext("c");
+        assertThat(received).containsExactly("a");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < 2 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertThat(received).containsExactly("a", "bc");
+    }
+
+    @Test
+    void flushesPendingTextBeforeTheError() {
+        coalescer(Duration.ofSeconds(10), 256).coalesce(upstream.asFlux())
+                .subscribe(received::add, e -> received.add("error: " + e.getMessage()));
+
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("b");
+        upstream.tryEmitError(new IllegalStateException("corte"));
+
+        assertThat(received).containsExactly("a", "b", "error: corte");
+    }
+
+    @Test
+    void disposingCancelsThePendingTimer() {
+        AtomicBoolean timerRan = new AtomicBoolean();
+        Schedulers.onScheduleHook("coalescer-test", task -> () -> {
+            timerRan.set(true);
+            task.run();
+        });
+        try {
+            Disposable subscription = subscribe(coalescer(Duration.ofMillis(50), 256));
+            upstream.tryEmitNext("a");
+            upstream.tryEmitNext("b");
+
+            subscription.dispose();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+
+            assertThat(timerRan).isFalse();
+            assertThat(received).containsExactly("a");
+            assertThat(upstream.currentSubscriberCount()).isZero();
+        } finally {
+            Schedulers.resetOnScheduleHook("coalescer-test");
+        }
+    }
+
+    private Disposable subscribe(ChunkCoalescer coalescer) {
+        return coalescer.coalesce(upstream.asFlux()).subscribe(received::add);
+    }
+
+    private static ChunkCoalescer coalescer(Duration window, int maxChars) {
+        ChunkCoalescer coalescer = new ChunkCoalescer();
+        ReflectionTestUtils.setField(coalescer, "window", window);
+        ReflectionTestUtils.setField(coalescer, "maxChars", maxChars);
+        return coalescer;
+    }
+}
@@ -0,0 +1,100 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.ConversationStore.Conversation;
+import com.keniding.springia.chat.service.ConversationStore.SessionNotFoundException;
+import com.keniding.springia.chat.service.ConversationStore.Turn;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConversationStoreTest {
+
+    private ConversationStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ConversationStore();
+        ReflectionTestUtils.setField(store, "maxSessions", 2);
+        ReflectionTestUtils.setField(store, "idleTimeout", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(store, "maxTurns", 50);
+    }
+
+    @Test
+    void sessionsBelongToTheCallerThatCreatedThem() {
+        String id = store.create("a").id();
+
+        assertThatThrownBy(() -> store.open("b", id)).isInstanceOf(SessionNotFoundException.class);
+        assertThatThrownBy(() -> store.open("a", "inventada")).isInstanceOf(SessionNotFoundException.class);
+        assertThat(store.remove("b", id)).isFalse();
+
+        assertThat(store.open("a", id).id()).isEqualTo(id);
+        assertThat(store.remove("a", id)).isTrue();
+        assertThatThrownBy(() -> store.open("a", id)).isInstanceOf(SessionNotFoundException.class);
+    }
+
+    @Test
+    void evictsIdleSessions() {
+        ReflectionTestUtils.setField(store, "idleTimeout", Duration.ofMillis(20));
+        String idle = store.create("a").id();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+
+        String fresh = store.create("a").id();
+
+        assertThatThrownBy(() -> store.open("a", idle)).isInstanceOf(SessionNotFoundException.class);
+        assertThat(store.open("a", fresh).id()).isEqualTo(fresh);
+        assertThat(store.stats()).containsEntry("evictedIdle", 1L).containsEntry("active", 1);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSessionAtTheCap() {
+        String first = store.create("a").id();
+        String second = store.create("a").id();
+        store.open("a", first);
+
+        String third = store.create("a").id();
+
+        assertThatThrownBy(() -> store.open("a", second)).isInstanceOf(SessionNotFoundException.class);
+        assertThat(store.open("a", first).id()).isEqualTo(first);
+        assertThat(store.open("a", third).id()).isEqualTo(third);
+        assertThat(store.stats()).containsEntry("evictedCapacity", 1L).containsEntry("active", 2);
+    }
+
+    @Test
+    void compactionReplacesOldTurnsWithTheSummary() {
+        Conversation conversation = store.create("a");
+        conversation.lock();
+        try {
+            for (int i = 0; i < 6; i++) {
+                conversation.append(new Turn("pregunta " + i, "respuesta " + i, 100));
+            }
+        } finally {
+            conversation.unlock();
+        }
+        assertThat(conversation.contextTokens()).isEqualTo(600);
+
+        assertThat(conversation.beginCompaction(300, 2)).hasSize(4);
+        // Un turno que llega mientras se resume queda detrás de los resumidos.
+        conversation.lock();
+        try {
+            conversation.append(new Turn("otra", "más", 100));
+        } finally {
+            conversation.unlock();
+        }
+        conversation.finishCompaction(4, "resumen", 50);
+
+        assertThat(conversation.contextTokens()).isEqualTo(50 + 3 * 100);
+        assertThat(conversation.summary()).isEqualTo("resumen");
+        assertThat(conversation.messages("hola"))
+                .hasSize(1 + 3 * 2 + 1)
+                .first().isInstanceOf(SystemMessage.class);
+        assertThat(conversation.beginCompaction(1000, 2)).isEmpty();
+    }
+}
@@ -0,0 +1,52 @@
+package com.keniding.springia.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentChunkerTest {
+
+    private final TokenEstimator estimator = new TokenEstimator();
+
+    @Test
+    void smallTextIsASingleChunk() {
+        assertThat(chunks("Un texto corto.", 100)).containsExactly("Un texto corto.");
+    }
+
+    @Test
+    void blankTextHasNoChunks() {
+        assertThat(chunks("  \n\n  ", 100)).isEmpty();
+    }
+
+    @Test
+    void chunksStayWithinBudgetAndKeepAllText() {
+        String paragraph = "La fotosíntesis convierte la luz en energía química para la planta. ";
+        String text = (paragraph.repeat(20) + "\n\n").repeat(50);
+
+        List<String> chunks = chunks(text, 300);
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allSatisfy(chunk -> assertThat(estimator.estimate(chunk)).isLessThanOrEqualTo(300));
+        assertThat(String.join("", chunks).strip()).isEqualTo(text.strip());
+    }
+
+    @Test
+    void cutsOnParagraphBoundariesWhenPossible() {
+        // 60 tokens por párrafo: caben dos por fragmento
+        String paragraph = "palabra ".repeat(30).strip() + "\n\n";
+        List<String> chunks = chunks(paragraph.repeat(10), 150);
+
+        assertThat(chunks.subList(0, chunks.size() - 1)).allSatisfy(chunk -> assertThat(chunk).endsWith("\n\n"));
+    }
+
+    private List<String> chunks(String text, long maxTokens) {
+        DocumentChunker chunker = new DocumentChunker(new StringReader(text), estimator, maxTokens);
+        List<String> chunks = new ArrayList<>();
+        chunker.forEachRemaining(chunks::add);
+        return chunks;
+    }
+}
@@ -0,0 +1,101 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GeminiClientPoolTest {
+
+    private static final Prompt PROMPT = new Prompt("hola");
+
+    @Test
+    void movesToAnotherKeyAndEjectsAfterRateLimit() {
+        AtomicInteger firstCalls = new AtomicInteger();
+        ChatModel limited = _ -> {
+            firstCalls.incrementAndGet();
+            throw new RuntimeException("429 RESOURCE_EXHAUSTED");
+        };
+        GeminiClientPool pool = pool(limited, answering("b"));
+
+        assertThat(text(pool.call(PROMPT))).isEqualTo("b");
+        assertThat(text(pool.call(PROMPT))).isEqualTo("b");
+        // La clave expulsada no vuelve a recibir llamadas durante el enfriamiento.
+        assertThat(firstCalls).hasValue(1);
+        assertThat(keyStats(pool, "key-1")).containsEntry("state", "ejected").containsEntry("rateLimited", 1L);
+        assertThat(keyStats(pool, "key-2")).containsEntry("state", "available").containsEntry("calls", 2L);
+    }
+
+    @Test
+    void rejectsWhenEveryKeyIsCoolingDown() {
+        ChatModel limited = _ -> {
+            throw new RuntimeException("429 RESOURCE_EXHAUSTED");
+        };
+        GeminiClientPool pool = pool(limited, limited);
+
+        assertThatThrownBy(() -> pool.call(PROMPT)).hasMessageContaining("429");
+        assertThatThrownBy(() -> pool.call(PROMPT)).isInstanceOf(ServiceOverloadedException.class);
+    }
+
+    @Test
+    void otherErrorsDoNotEjectTheKey() {
+        ChatModel broken = _ -> {
+            throw new RuntimeException("500 INTERNAL");
+        };
+        GeminiClientPool pool = pool(broken);
+
+        assertThatThrownBy(() -> pool.call(PROMPT)).hasMessageContaining("500");
+        assertThat(keyStats(pool, "key-1")).containsEntry("state", "available").containsEntry("failures", 1L);
+    }
+
+    @Test
+    void prefersKeysWithQuotaLeft() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("chat.quota.default.requests-per-minute", "2");
+        GeminiClientPool pool = new GeminiClientPool(List.of(
+                new GeminiClientPool.PooledKey("key-1", "...", answering("a")),
+                new GeminiClientPool.PooledKey("key-2", "...", answering("b"))),
+                environment, new SimpleMeterRegistry(), "flash", Duration.ofSeconds(5), Duration.ofMinutes(2));
+
+        for (int i = 0; i < 4; i++) {
+            pool.call(PROMPT);
+        }
+        assertThat(keyStats(pool, "key-1")).containsEntry("calls", 2L);
+        assertThat(keyStats(pool, "key-2")).containsEntry("calls", 2L);
+    }
+
+    private static GeminiClientPool pool(ChatModel... models) {
+        List<GeminiClientPool.PooledKey> keys = new ArrayList<>();
+        for (int i = 0; i < models.length; i++) {
+            keys.add(new GeminiClientPool.PooledKey("key-" + (i + 1), "...", models[i]));
+        }
+        return new GeminiClientPool(keys, new MockEnvironment(), new SimpleMeterRegistry(),
+                "flash", Duration.ofSeconds(5), Duration.ofMinutes(2));
+    }
+
+    private static ChatModel answering(String text) {
+        return _ -> new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult().getOutput().getText();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> keyStats(GeminiClientPool pool, String key) {
+        return (Map<String, Object>) pool.stats().get(key);
+    }
+}
@@ -0,0 +1,97 @@
+package com.keniding.springia.chat.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiGatewayTest {
+
+    private static final String MODEL = "flash";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private QuotaScheduler quotaScheduler;
+    private ModelConcurrencyLimiter concurrencyLimiter;
+    private LatencyTracker latencyTracker;
+    private HedgePolicy hedgePolicy;
+
+    @BeforeEach
+    void setUp() {
+        quotaScheduler = new QuotaScheduler(new MockEnvironment(), meterRegistry);
+        ReflectionTestUtils.setField(quotaScheduler, "enabled", true);
+        ReflectionTestUtils.setField(quotaScheduler, "defaultRequestsPerMinute", 10L);
+        ReflectionTestUtils.setField(quotaScheduler, "defaultTokensPerMinute", 1_000_000L);
+        ReflectionTestUtils.setField(quotaScheduler, "maxWait", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(quotaScheduler, "backoffInitial", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(quotaScheduler, "backoffMax", Duration.ofSeconds(60));
+
+        concurrencyLimiter = new ModelConcurrencyLimiter();
+        ReflectionTestUtils.setField(concurrencyLimiter, "maxInFlightPerModel", 4);
+        ReflectionTestUtils.setField(concurrencyLimiter, "acquireTimeout", Duration.ofSeconds(1));
+
+        latencyTracker = new LatencyTracker();
+        latencyTracker.record(MODEL, TimeUnit.MILLISECONDS.toNanos(10));
+
+        hedgePolicy = new HedgePolicy(latencyTracker, meterRegistry);
+        ReflectionTestUtils.setField(hedgePolicy, "enabled", true);
+        ReflectionTestUtils.setField(hedgePolicy, "percentile", 0.5);
+        ReflectionTestUtils.setField(hedgePolicy, "minDelay", Duration.ofMillis(20));
+        ReflectionTestUtils.setField(hedgePolicy, "minSamples", 1);
+        ReflectionTestUtils.setField(hedgePolicy, "budgetRatio", 1.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void hedgeThatNeverStartsGivesItsQuotaBack() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatModel slow = _ -> {
+            calls.incrementAndGet();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("hola"))));
+        };
+
+        // Un solo hilo: la copia queda en cola detrás del principal y se cancela sin arrancar.
+        ChatResponse response = gateway(slow).call(MODEL, new Prompt("hola"));
+
+        assertThat(response.getResult().getOutput().getText()).isEqualTo("hola");
+        assertThat(calls).hasValue(1);
+        assertThat(quota()).containsEntry("availableRequests", 9L);
+        assertThat(concurrencyLimiter.stats()).containsEntry(MODEL, Map.of("inFlight", 0, "queued", 0));
+    }
+
+    private GeminiGateway gateway(ChatModel chatModel) {
+        return new GeminiGateway(chatModel, concurrencyLimiter, quotaScheduler, new ChatMetrics(meterRegistry),
+                new AdaptiveConcurrencyLimiter(meterRegistry), new UpstreamCircuitBreaker(meterRegistry),
+                latencyTracker, hedgePolicy, executor, new TokenEstimator(),
+                new UsageAccountant(new MockEnvironment()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> quota() {
+        return (Map<String, Object>) quotaScheduler.stats().get(MODEL);
+    }
+}
@@ -0,0 +1,54 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatRequest;
+import com.keniding.springia.chat.service.JobJournal.Entry;
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobJournalTest {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void dropsTornLastLineAndKeepsLaterAppends() throws IOException {
+        Path path = dir.resolve("jobs.journal");
+        try (JobJournal journal = new JobJournal(path, jsonMapper, false)) {
+            journal.open();
+            journal.append(submit("a", 1), () -> {});
+            journal.append(submit("b", 2), () -> {});
+        }
+        // Caída a mitad de escribir la tercera entrada.
+        Files.writeString(path, "{\"op\":\"submit\",\"id\":\"c", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (JobJournal journal = new JobJournal(path, jsonMapper, false)) {
+            assertThat(journal.open()).extracting(Entry::id).containsExactly("a", "b");
+            journal.append(submit("d", 3), () -> {});
+        }
+
+        try (JobJournal journal = new JobJournal(path, jsonMapper, false)) {
+            List<Entry> entries = journal.open();
+            assertThat(entries).extracting(Entry::id).containsExactly("a", "b", "d");
+            assertThat(entries.getLast().request().getMessage()).isEqualTo("mensaje d");
+        }
+    }
+
+    private static Entry submit(String id, long seq) {
+        return Entry.submit(id, seq, Priority.NORMAL, "tester",
+                new ChatRequest("mensaje " + id, null, null, null), Instant.parse("2026-01-01T00:00:00Z"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.QuotaScheduler.Priority;
+import com.keniding.springia.chat.service.QuotaScheduler.QuotaExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuotaSchedulerTest {
+
+    private QuotaScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("chat.quota.models.small.tokens-per-minute", "100");
+        scheduler = new QuotaScheduler(environment, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "defaultRequestsPerMinute", 2L);
+        ReflectionTestUtils.setField(scheduler, "defaultTokensPerMinute", 1_000_000L);
+        ReflectionTestUtils.setField(scheduler, "maxWait", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(scheduler, "backoffInitial", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(scheduler, "backoffMax", Duration.ofSeconds(60));
+    }
+
+    @Test
+    void rejectsRequestsOverTheRequestBudget() {
+        scheduler.acquire("gemini", 10, Priority.NORMAL);
+        scheduler.acquire("gemini", 10, Priority.NORMAL);
+
+        assertThatThrownBy(() -> scheduler.acquire("gemini", 10, Priority.NORMAL))
+                .isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    void reconcileReturnsUnusedTokensToTheBucket() {
+        var permit = scheduler.acquire("small", 80, Priority.NORMAL);
+        assertThatThrownBy(() -> scheduler.acquire("small", 80, Priority.NORMAL))
+                .isInstanceOf(QuotaExceededException.class);
+
+        scheduler.reconcile(permit, 20);
+
+        assertThat(scheduler.acquire("small", 80, Priority.NORMAL).reservedTokens()).isEqualTo(80);
+    }
+
+    @Test
+    void rateLimitBlocksTheModelImmediately() {
+        scheduler.onRateLimited("gemini");
+
+        assertThatThrownBy(() -> scheduler.acquire("gemini", 10, Priority.HIGH))
+                .isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void tryAcquireNeverWaitsNorCountsRejections() {
+        assertThat(scheduler.tryAcquire("gemini", 10)).isNotNull();
+        assertThat(scheduler.tryAcquire("gemini", 10)).isNotNull();
+        assertThat(scheduler.tryAcquire("gemini", 10)).isNull();
+
+        scheduler.onRateLimited("small");
+        assertThat(scheduler.tryAcquire("small", 10)).isNull();
+
+        Map<String, Object> gemini = (Map<String, Object>) scheduler.stats().get("gemini");
+        assertThat(gemini).containsEntry("rejected", 0L);
+    }
+
+    @Test
+    void wouldWaitReservesNothing() {
+        assertThat(scheduler.wouldWait("small", 80)).isFalse();
+        assertThat(scheduler.wouldWait("small", 200)).isFalse();
+        scheduler.acquire("small", 80, Priority.NORMAL);
+
+        assertThat(scheduler.wouldWait("small", 80)).isTrue();
+        assertThat(scheduler.wouldWait("small", 10)).isFalse();
+
+        scheduler.onRateLimited("gemini");
+        assertThat(scheduler.wouldWait("gemini", 1)).isTrue();
+    }
+
+    @Test
+    void cancelReturnsTheRequestAndItsTokens() {
+        var permit = scheduler.acquire("small", 80, Priority.NORMAL);
+        scheduler.acquire("small", 10, Priority.NORMAL);
+        assertThat(scheduler.tryAcquire("small", 10)).isNull();
+
+        scheduler.cancel(permit);
+
+        assertThat(scheduler.tryAcquire("small", 90)).isNotNull();
+    }
+}
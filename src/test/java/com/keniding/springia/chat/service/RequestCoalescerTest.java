@@ -0,0 +1,145 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestCoalescerTest {
+
+    private static final PromptKey KEY = PromptKey.of("hola", "flash", 0.7, 100);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new RequestCoalescer(executor);
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentIdenticalCallsShareOneUpstreamCall() throws InterruptedException {
+        List<ChatResponse> responses = new CopyOnWriteArrayList<>();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(Thread.ofVirtual().start(() -> {
+                responses.add(coalescer.execute(KEY, blocking(() -> answer("hola"))));
+            }));
+        }
+
+        awaitUntil(() -> Long.valueOf(7).equals(coalescer.stats().get("coalescedRequests")));
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(responses).hasSize(8).allSatisfy(response -> assertThat(response).isSameAs(responses.getFirst()));
+        assertThat(coalescer.stats()).containsEntry("upstreamCalls", 1L);
+    }
+
+    @Test
+    void detachedWaiterDoesNotCancelTheCallForTheOthers() throws Exception {
+        Supplier<ChatResponse> upstream = blocking(() -> answer("hola"));
+        CompletableFuture<ChatResponse> leaving = coalescer.submit(KEY, upstream);
+        CompletableFuture<ChatResponse> staying = coalescer.submit(KEY, upstream);
+
+        leaving.cancel(true);
+        release.countDown();
+
+        assertThat(staying.get(5, TimeUnit.SECONDS).getResponse()).isEqualTo("hola");
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(coalescer.stats()).containsEntry("detachedWaiters", 1L).containsEntry("cancelledCalls", 0L);
+    }
+
+    @Test
+    void callIsCancelledOnlyWhenEveryWaiterLeaves() {
+        Supplier<ChatResponse> upstream = blocking(() -> answer("hola"));
+        CompletableFuture<ChatResponse> first = coalescer.submit(KEY, upstream);
+        CompletableFuture<ChatResponse> second = coalescer.submit(KEY, upstream);
+
+        first.cancel(true);
+        assertThat(coalescer.stats()).containsEntry("cancelledCalls", 0L);
+        second.cancel(true);
+
+        assertThat(coalescer.stats()).containsEntry("cancelledCalls", 1L).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void failureReachesEveryWaiterAndClearsTheEntry() throws Exception {
+        Supplier<ChatResponse> failing = blocking(() -> {
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<ChatResponse> first = coalescer.submit(KEY, failing);
+        CompletableFuture<ChatResponse> second = coalescer.submit(KEY, failing);
+
+        release.countDown();
+
+        for (CompletableFuture<ChatResponse> waiter : List.of(first, second)) {
+            assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("boom");
+        }
+        awaitUntil(() -> Integer.valueOf(0).equals(coalescer.stats().get("inFlight")));
+
+        assertThat(coalescer.submit(KEY, () -> answer("otra")).get(5, TimeUnit.SECONDS).getResponse())
+                .isEqualTo("otra");
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(coalescer.stats()).containsEntry("upstreamCalls", 2L);
+    }
+
+    /** Llamada al modelo que espera a {@link #release} y cuenta sus ejecuciones. */
+    private Supplier<ChatResponse> blocking(Supplier<ChatResponse> answer) {
+        return () -> {
+            upstreamCalls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrumpida", e);
+            }
+            return answer.get();
+        };
+    }
+
+    private static ChatResponse answer(String text) {
+        return ChatResponse.builder().response(text).build();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("tiempo de espera agotado").isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+}
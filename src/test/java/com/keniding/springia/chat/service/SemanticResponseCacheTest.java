@@ -0,0 +1,62 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.dto.ChatResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticResponseCacheTest {
+
+    private SemanticResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SemanticResponseCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.9);
+        ReflectionTestUtils.setField(cache, "minWords", 3);
+        ReflectionTestUtils.setField(cache, "maxTemperature", 1.0);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1_000_000L);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(1));
+    }
+
+    @Test
+    void doesNotStoreAnEquivalentEntryTwice() {
+        cache.put(key("como configuro el servidor web de la aplicacion"), response("primera"));
+        cache.put(key("como configuro  el servidor web de la aplicacion"), response("segunda"));
+
+        assertThat(cache.stats()).containsEntry("entries", 1).containsEntry("duplicatesSkipped", 1L);
+        assertThat(cache.get(key("como configuro el servidor web de la aplicacion")).getResponse())
+                .isEqualTo("primera");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesOverTheByteBudget() {
+        ReflectionTestUtils.setField(cache, "maxBytes", 1_000L);
+
+        cache.put(key("como configuro el servidor web"), response("a"));
+        cache.put(key("que base de datos recomiendas usar"), response("b"));
+        cache.put(key("explica la recursividad con un ejemplo"), response("c"));
+
+        assertThat(cache.stats()).containsEntry("entries", 2).containsEntry("evictions", 1L);
+        assertThat((long) cache.stats().get("bytes")).isLessThanOrEqualTo(1_000L);
+        assertThat(cache.get(key("como configuro el servidor web"))).isNull();
+    }
+
+    private static PromptKey key(String message) {
+        return PromptKey.of(message, "gemini", 0.7, 100);
+    }
+
+    private static ChatResponse response(String text) {
+        return ChatResponse.builder()
+                .response(text)
+                .model("gemini")
+                .build();
+    }
+}
@@ -0,0 +1,39 @@
+package com.keniding.springia.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimHashTest {
+
+    @Test
+    void normalizesCaseAccentsAndPunctuation() {
+        assertThat(SimHash.words("¿Qué es la FOTOSÍNTESIS?"))
+                .containsExactly("que", "es", "la", "fotosintesis");
+    }
+
+    @Test
+    void identicalWordsGiveIdenticalFingerprint() {
+        long a = SimHash.fingerprint(SimHash.words("Explica la fotosíntesis en pocas palabras"));
+        long b = SimHash.fingerprint(SimHash.words("explica la fotosintesis, en pocas palabras."));
+        assertThat(a).isEqualTo(b);
+    }
+
+    @Test
+    void similarPromptsAreCloserThanUnrelatedOnes() {
+        List<String> base = SimHash.words(
+                "Explica de forma sencilla cómo funciona la fotosíntesis en las plantas verdes");
+        List<String> paraphrase = SimHash.words(
+                "Explica de forma sencilla cómo funciona la fotosíntesis en las plantas");
+        List<String> unrelated = SimHash.words(
+                "Escribe una función en Java que ordene una lista de enteros");
+
+        long fingerprint = SimHash.fingerprint(base);
+        double near = SimHash.similarity(fingerprint, SimHash.fingerprint(paraphrase));
+        double far = SimHash.similarity(fingerprint, SimHash.fingerprint(unrelated));
+
+        assertThat(near).isGreaterThan(far);
+    }
+}
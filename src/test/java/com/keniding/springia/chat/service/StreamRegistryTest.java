@@ -0,0 +1,86 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.StreamRegistry.StreamEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamRegistryTest {
+
+    private StreamRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new StreamRegistry();
+        ReflectionTestUtils.setField(registry, "bufferChunks", 16);
+        ReflectionTestUtils.setField(registry, "detachGrace", Duration.ofSeconds(15));
+        ReflectionTestUtils.setField(registry, "retention", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(registry, "maxStreams", 1);
+        ReflectionTestUtils.setField(registry, "maxRetained", 2);
+    }
+
+    @Test
+    void finishedGenerationsAreCappedOldestFirst() {
+        List<String> lastIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<StreamEvent> events = registry.start(Flux.just(StreamEvent.text("hola"))).collectList().block();
+            assertThat(events).extracting(StreamEvent::data).containsExactly("hola");
+            lastIds.add(events.getFirst().id());
+        }
+
+        assertThat(registry.stats())
+                .containsEntry("active", 0)
+                .containsEntry("retained", 2)
+                .containsEntry("evicted", 3L);
+        assertThat(registry.resume(lastIds.get(2))).isEmpty();
+        assertThat(registry.resume(lastIds.get(4)).orElseThrow().collectList().block()).isEmpty();
+    }
+
+    @Test
+    void ringGrowsPastItsInitialSizeUpToTheBuffer() {
+        List<StreamEvent> chunks = IntStream.range(0, 40).mapToObj(i -> StreamEvent.text("t" + i)).toList();
+        ReflectionTestUtils.setField(registry, "bufferChunks", 32);
+
+        List<StreamEvent> events = registry.start(Flux.fromIterable(chunks)).collectList().block();
+
+        assertThat(events).hasSize(40);
+        String lastId = events.getLast().id();
+        String streamId = lastId.substring(0, lastId.lastIndexOf(':'));
+        assertThat(registry.resume(streamId + ":7").orElseThrow().collectList().block())
+                .extracting(StreamEvent::data)
+                .containsExactlyElementsOf(chunks.subList(8, 40).stream().map(StreamEvent::data).toList());
+        assertThatThrownBy(() -> registry.resume(streamId + ":6").orElseThrow().collectList().block())
+                .isInstanceOf(StreamRegistry.StreamResumeException.class);
+    }
+
+    @Test
+    void unsubscribedGenerationsAreNotRegistered() {
+        registry.start(Flux.just(StreamEvent.text("a")));
+        registry.start(Flux.just(StreamEvent.text("b")));
+
+        assertThat(registry.stats()).containsEntry("retained", 0);
+        assertThat(registry.start(Flux.just(StreamEvent.text("c"))).collectList().block()).hasSize(1);
+    }
+
+    @Test
+    void rejectsWhileTheLimitIsReachedByRunningGenerations() {
+        Sinks.Many<StreamEvent> source = Sinks.many().unicast().onBackpressureBuffer();
+        registry.start(source.asFlux()).subscribe();
+
+        assertThatThrownBy(() -> registry.start(Flux.empty()))
+                .isInstanceOf(ServiceOverloadedException.class);
+
+        source.tryEmitComplete();
+        assertThat(registry.start(Flux.empty()).collectList().block()).isEmpty();
+    }
+}
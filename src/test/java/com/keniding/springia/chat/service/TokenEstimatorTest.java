@@ -0,0 +1,34 @@
+package com.keniding.springia.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenEstimatorTest {
+
+    private final TokenEstimator estimator = new TokenEstimator();
+
+    @Test
+    void emptyTextHasNoTokens() {
+        assertThat(estimator.estimate(null)).isZero();
+        assertThat(estimator.estimate("   ")).isZero();
+    }
+
+    @Test
+    void countsWordsPunctuationAndIdeographs() {
+        // "hola"(1) + ","(1) + "mundo"(2) + "!"(1)
+        assertThat(estimator.estimate("hola, mundo!")).isEqualTo(5);
+        // Cada ideograma cuenta como un token
+        assertThat(estimator.estimate("你好")).isEqualTo(2);
+        // Las letras acentuadas forman parte de la palabra
+        assertThat(estimator.estimate("canción")).isEqualTo(2);
+    }
+
+    @Test
+    void growsLinearlyWithText() {
+        String paragraph = "El rápido zorro marrón salta sobre el perro perezoso. ";
+        long one = estimator.estimate(paragraph);
+
+        assertThat(estimator.estimate(paragraph.repeat(100))).isEqualTo(one * 100);
+    }
+}
@@ -0,0 +1,74 @@
+package com.keniding.springia.chat.service;
+
+import com.keniding.springia.chat.service.UpstreamCircuitBreaker.State;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamCircuitBreakerTest {
+
+    private static final String MODEL = "flash";
+
+    private UpstreamCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        breaker = new UpstreamCircuitBreaker(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(breaker, "enabled", true);
+        ReflectionTestUtils.setField(breaker, "windowSize", 4);
+        ReflectionTestUtils.setField(breaker, "minimumCalls", 2);
+        ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "openDuration", Duration.ZERO);
+        ReflectionTestUtils.setField(breaker, "halfOpenCalls", 1);
+    }
+
+    @Test
+    void locallyRejectedTrialGivesItsSlotBack() {
+        open();
+
+        long trial = breaker.checkAvailable(MODEL);
+        assertThat(trial).isNotEqualTo(UpstreamCircuitBreaker.NO_TRIAL);
+        assertThat(state()).isEqualTo(State.HALF_OPEN.name());
+        assertThatThrownBy(() -> breaker.checkAvailable(MODEL))
+                .isInstanceOf(ServiceOverloadedException.class);
+
+        // La cuota local rechaza la llamada de prueba antes de llegar a Gemini.
+        breaker.release(MODEL, trial);
+
+        breaker.checkAvailable(MODEL);
+        breaker.onSuccess(MODEL);
+        assertThat(state()).isEqualTo(State.CLOSED.name());
+        assertThat(breaker.checkAvailable(MODEL)).isEqualTo(UpstreamCircuitBreaker.NO_TRIAL);
+    }
+
+    @Test
+    void ignoresReleasesFromAPreviousTrialRound() {
+        open();
+        long staleTrial = breaker.checkAvailable(MODEL);
+        breaker.onError(MODEL, UpstreamError.SERVER_ERROR);
+
+        breaker.checkAvailable(MODEL);
+        breaker.release(MODEL, staleTrial);
+
+        assertThatThrownBy(() -> breaker.checkAvailable(MODEL))
+                .isInstanceOf(ServiceOverloadedException.class);
+    }
+
+    private void open() {
+        breaker.onError(MODEL, UpstreamError.SERVER_ERROR);
+        breaker.onError(MODEL, UpstreamError.SERVER_ERROR);
+        assertThat(state()).isEqualTo(State.OPEN.name());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String state() {
+        return (String) ((Map<String, Object>) breaker.stats().get(MODEL)).get("state");
+    }
+}
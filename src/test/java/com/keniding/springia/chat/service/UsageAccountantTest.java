@@ -0,0 +1,116 @@
+package com.keniding.springia.chat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class UsageAccountantTest {
+
+    /** Minuto en punto de una hora cualquiera. */
+    private static final long BASE_MINUTE = 60 * 480_000L;
+
+    private UsageAccountant accountant;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("chat.pricing.models.pro.input-per-1m", "1.25")
+                .withProperty("chat.pricing.models.pro.output-per-1m", "10.00");
+        accountant = new UsageAccountant(environment);
+        ReflectionTestUtils.setField(accountant, "defaultInputPrice", 0.30);
+        ReflectionTestUtils.setField(accountant, "defaultOutputPrice", 2.50);
+        ReflectionTestUtils.setField(accountant, "maxCallers", 2);
+    }
+
+    @Test
+    void usesPerModelPricing() {
+        assertThat(accountant.cost("pro", 1_000_000, 1_000_000)).isCloseTo(11.25, within(1e-9));
+        assertThat(accountant.cost("flash", 1_000_000, 0)).isCloseTo(0.30, within(1e-9));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aggregatesByModelAndCallerInEveryWindow() {
+        accountant.record("pro", "a", 100, 50);
+        accountant.record("pro", "b", 100, 50);
+        accountant.record("flash", "a", 10, 5);
+
+        Map<String, Object> report = accountant.report(null);
+        Map<String, Object> pro = (Map<String, Object>) ((Map<String, Object>) report.get("models")).get("pro");
+        Map<String, Object> callerA = (Map<String, Object>) ((Map<String, Object>) report.get("callers")).get("a");
+
+        for (String window : new String[]{"minute", "hour", "day", "total"}) {
+            assertThat((Map<String, Object>) pro.get(window))
+                    .containsEntry("requests", 2L)
+                    .containsEntry("promptTokens", 200L)
+                    .containsEntry("completionTokens", 100L);
+            assertThat((Map<String, Object>) callerA.get(window))
+                    .containsEntry("requests", 2L)
+                    .containsEntry("promptTokens", 110L);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void foldsCallersBeyondTheLimitIntoOther() {
+        accountant.record("flash", "a", 1, 1);
+        accountant.record("flash", "b", 1, 1);
+        accountant.record("flash", "c", 1, 1);
+
+        Map<String, Object> callers = (Map<String, Object>) accountant.report(null).get("callers");
+        assertThat(callers).containsKeys("a", "b", "other").doesNotContainKey("c");
+    }
+
+    @Test
+    void rollsWindowsForwardAcrossMinutesAndHours() {
+        at(BASE_MINUTE);
+        accountant.record("flash", "a", 10, 0);
+        at(BASE_MINUTE + 1);
+        accountant.record("flash", "a", 20, 0);
+
+        assertThat(window("minute")).containsEntry("requests", 1L).containsEntry("promptTokens", 20L);
+        assertThat(window("hour")).containsEntry("requests", 2L).containsEntry("promptTokens", 30L);
+
+        at(BASE_MINUTE + 61);
+        accountant.record("flash", "a", 40, 0);
+
+        assertThat(window("minute")).containsEntry("requests", 1L).containsEntry("promptTokens", 40L);
+        assertThat(window("hour")).containsEntry("requests", 1L).containsEntry("promptTokens", 40L);
+        assertThat(window("day")).containsEntry("requests", 3L).containsEntry("promptTokens", 70L);
+        assertThat(window("total")).containsEntry("requests", 3L);
+    }
+
+    @Test
+    void staleMinuteDoesNotRollBackwards() {
+        at(BASE_MINUTE + 1);
+        accountant.record("flash", "a", 10, 0);
+        // Un hilo que leyó el reloj antes del cambio de minuto registra tarde.
+        at(BASE_MINUTE);
+        accountant.record("flash", "a", 20, 0);
+        at(BASE_MINUTE + 1);
+
+        assertThat(window("minute")).containsEntry("requests", 2L).containsEntry("promptTokens", 30L);
+        assertThat(window("hour")).containsEntry("requests", 2L);
+    }
+
+    private void at(long minute) {
+        Instant instant = Instant.ofEpochMilli(TimeUnit.MINUTES.toMillis(minute));
+        ReflectionTestUtils.setField(accountant, "clock", Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> window(String name) {
+        Map<String, Object> models = (Map<String, Object>) accountant.report(null).get("models");
+        return (Map<String, Object>) ((Map<String, Object>) models.get("flash")).get(name);
+    }
+}
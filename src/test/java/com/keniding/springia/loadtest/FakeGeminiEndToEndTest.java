@@ -0,0 +1,84 @@
+package com.keniding.springia.loadtest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * La aplicación completa contra {@link FakeGeminiServer}: comprueba que el
+ * cliente de GenAI acepta la URL base alternativa y que las rutas de chat,
+ * streaming y catálogo funcionan de extremo a extremo.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class FakeGeminiEndToEndTest {
+
+    private static final FakeGeminiServer FAKE = startFake();
+
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @Autowired
+    private Environment environment;
+
+    @DynamicPropertySource
+    static void geminiProperties(DynamicPropertyRegistry registry) {
+        registry.add("chat.gemini.base-url", FAKE::baseUrl);
+        registry.add("spring.ai.google.genai.api-key", () -> "test");
+    }
+
+    @AfterAll
+    static void stopFake() {
+        FAKE.close();
+    }
+
+    @Test
+    void chatReturnsGeneratedTextAndUsage() throws Exception {
+        HttpResponse<String> response = get("/api/chat?message=hola");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("respuesta").contains("\"completionTokens\":64");
+    }
+
+    @Test
+    void streamDeliversAllChunks() throws Exception {
+        HttpResponse<String> response = get("/api/chat/stream?message=cuenta%20algo");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("respuesta").contains("id:").contains("event:usage");
+    }
+
+    @Test
+    void modelsAreListedFromTheStandIn() throws Exception {
+        HttpResponse<String> response = get("/api/models");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("gemini-2.5-flash");
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        URI uri = URI.create("http://localhost:" + environment.getProperty("local.server.port") + path);
+        return http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static FakeGeminiServer startFake() {
+        try {
+            return FakeGeminiServer.start(0, FakeGeminiServer.Settings.defaults()
+                    .withLatency(Duration.ofMillis(5), 0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
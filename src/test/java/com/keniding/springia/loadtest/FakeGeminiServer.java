@@ -0,0 +1,238 @@
+package com.keniding.springia.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sustituto local de la API de Google GenAI para pruebas de carga sin gastar
+ * cuota. Atiende {@code models.list}, {@code models.get},
+ * {@code generateContent} y {@code streamGenerateContent?alt=sse} con
+ * latencia log-normal configurable, 429 inyectados y uso de tokens.
+ * <p>
+ * La aplicación se apunta aquí con {@code chat.gemini.base-url}. También se
+ * puede arrancar suelto: {@code FakeGeminiServer --port=8089 --median-ms=400}.
+ */
+public final class FakeGeminiServer implements AutoCloseable {
+
+    /**
+     * Comportamiento del servidor.
+     *
+     * @param medianLatency       mediana de la latencia hasta la respuesta (o el primer fragmento)
+     * @param latencySigma        dispersión de la log-normal; 0 = latencia fija
+     * @param interChunkDelay     pausa entre fragmentos en streaming
+     * @param streamChunks        fragmentos por respuesta en streaming
+     * @param rateLimitRate       fracción de peticiones de generación que reciben un 429
+     * @param completionTokens    tokens de salida informados (y palabras generadas)
+     * @param models              modelos del catálogo
+     */
+    public record Settings(
+            Duration medianLatency,
+            double latencySigma,
+            Duration interChunkDelay,
+            int streamChunks,
+            double rateLimitRate,
+            int completionTokens,
+            List<String> models
+    ) {
+        public static Settings defaults() {
+            return new Settings(Duration.ofMillis(300), 0.5, Duration.ofMillis(20), 8, 0.0, 64,
+                    List.of("gemini-2.5-flash-lite", "gemini-2.5-flash", "gemini-2.5-pro"));
+        }
+
+        public Settings withLatency(Duration median, double sigma) {
+            return new Settings(median, sigma, interChunkDelay, streamChunks, rateLimitRate, completionTokens, models);
+        }
+
+        public Settings withRateLimitRate(double rate) {
+            return new Settings(medianLatency, latencySigma, interChunkDelay, streamChunks, rate, completionTokens, models);
+        }
+    }
+
+    private static final String ANSWER_WORD = "respuesta ";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final JsonMapper json = JsonMapper.builder().build();
+    private final Settings settings;
+    private final String answer;
+
+    private final LongAdder generateRequests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    private FakeGeminiServer(int port, Settings settings) throws IOException {
+        this.settings = settings;
+        this.answer = ANSWER_WORD.repeat(settings.completionTokens()).strip();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public static FakeGeminiServer start(int port, Settings settings) throws IOException {
+        FakeGeminiServer fake = new FakeGeminiServer(port, settings);
+        fake.server.start();
+        return fake;
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public long generateRequests() {
+        return generateRequests.sum();
+    }
+
+    public long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            int models = path.indexOf("/models");
+            String resource = models >= 0 ? path.substring(models + "/models".length()) : path;
+
+            if ("GET".equals(method) && (resource.isEmpty() || resource.equals("/"))) {
+                sendJson(exchange, 200, Map.of("models", settings.models().stream().map(this::model).toList()));
+            } else if ("GET".equals(method) && resource.startsWith("/")) {
+                String name = resource.substring(1);
+                if (settings.models().contains(name)) {
+                    sendJson(exchange, 200, model(name));
+                } else {
+                    sendError(exchange, 404, "NOT_FOUND", "models/" + name + " is not found");
+                }
+            } else if ("POST".equals(method) && resource.endsWith(":generateContent")) {
+                generate(exchange, modelOf(resource, ":generateContent"), false);
+            } else if ("POST".equals(method) && resource.endsWith(":streamGenerateContent")) {
+                generate(exchange, modelOf(resource, ":streamGenerateContent"), true);
+            } else {
+                sendError(exchange, 404, "NOT_FOUND", "Unknown path " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void generate(HttpExchange exchange, String model, boolean stream) throws IOException, InterruptedException {
+        generateRequests.increment();
+        int promptTokens = Math.max(1, exchange.getRequestBody().readAllBytes().length / 4);
+
+        if (ThreadLocalRandom.current().nextDouble() < settings.rateLimitRate()) {
+            rateLimited.increment();
+            sendError(exchange, 429, "RESOURCE_EXHAUSTED", "Resource has been exhausted (e.g. check quota).");
+            return;
+        }
+
+        Thread.sleep(sampleLatency());
+
+        if (!stream) {
+            sendJson(exchange, 200, chunk(model, answer, promptTokens, true));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        List<String> parts = split(answer, settings.streamChunks());
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                Thread.sleep(settings.interChunkDelay());
+            }
+            boolean last = i == parts.size() - 1;
+            body.write(("data: " + json.writeValueAsString(chunk(model, parts.get(i), promptTokens, last)) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            body.flush();
+        }
+    }
+
+    private Duration sampleLatency() {
+        double factor = Math.exp(settings.latencySigma() * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofNanos((long) (settings.medianLatency().toNanos() * factor));
+    }
+
+    private Map<String, Object> chunk(String model, String text, int promptTokens, boolean last) {
+        Map<String, Object> candidate = new LinkedHashMap<>();
+        candidate.put("content", Map.of("role", "model", "parts", List.of(Map.of("text", text))));
+        candidate.put("index", 0);
+        if (last) {
+            candidate.put("finishReason", "STOP");
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("candidates", List.of(candidate));
+        if (last) {
+            response.put("usageMetadata", Map.of(
+                    "promptTokenCount", promptTokens,
+                    "candidatesTokenCount", settings.completionTokens(),
+                    "totalTokenCount", promptTokens + settings.completionTokens()));
+        }
+        response.put("modelVersion", model);
+        return response;
+    }
+
+    private Map<String, Object> model(String name) {
+        return Map.of(
+                "name", "models/" + name,
+                "displayName", name,
+                "description", "Modelo simulado",
+                "inputTokenLimit", 1_048_576,
+                "outputTokenLimit", 65_536,
+                "supportedGenerationMethods", List.of("generateContent", "countTokens"));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = json.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        sendJson(exchange, status, Map.of("error", Map.of("code", status, "message", message, "status", code)));
+    }
+
+    private static String modelOf(String resource, String action) {
+        return resource.substring(1, resource.length() - action.length());
+    }
+
+    private static List<String> split(String text, int chunks) {
+        List<String> parts = new ArrayList<>(chunks);
+        int size = Math.max(1, Math.ceilDiv(text.length(), chunks));
+        for (int start = 0; start < text.length(); start += size) {
+            parts.add(text.substring(start, Math.min(text.length(), start + size)));
+        }
+        return parts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadTestHarness.parseOptions(args);
+        Settings settings = Settings.defaults()
+                .withLatency(Duration.ofMillis(Long.parseLong(options.getOrDefault("median-ms", "300"))),
+                        Double.parseDouble(options.getOrDefault("sigma", "0.5")))
+                .withRateLimitRate(Double.parseDouble(options.getOrDefault("rate-limit", "0")));
+        FakeGeminiServer fake = start(Integer.parseInt(options.getOrDefault("port", "8089")), settings);
+        System.out.println("Gemini simulado en " + fake.baseUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,271 @@
+package com.keniding.springia.loadtest;
+
+import com.keniding.springia.SpringIaApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Prueba de carga de extremo a extremo contra {@code /api/chat},
+ * {@code /api/chat/stream} y {@code /api/models}.
+ * <p>
+ * Carga en modelo abierto: las peticiones salen a su hora según el RPS
+ * objetivo aunque las anteriores no hayan terminado, y la latencia se mide
+ * desde la hora prevista, así que los atascos del servicio no se esconden
+ * (omisión coordinada).
+ * <p>
+ * Sin {@code --target} arranca {@link FakeGeminiServer} y la aplicación
+ * apuntando a él; con {@code --target=http://host:8080} carga un servicio ya
+ * levantado. Opciones: {@code --rps=50 --duration=30 --mix=chat:70,stream:20,models:10
+ * --median-ms=300 --sigma=0.5 --rate-limit=0.01}.
+ */
+public final class LoadTestHarness {
+
+    enum Scenario { CHAT, STREAM, MODELS }
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final String target;
+    private final Map<Scenario, Results> results = new EnumMap<>(Scenario.class);
+
+    private LoadTestHarness(String target) {
+        this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+        for (Scenario scenario : Scenario.values()) {
+            results.put(scenario, new Results());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int rps = Integer.parseInt(options.getOrDefault("rps", "50"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        Map<Scenario, Integer> mix = parseMix(options.getOrDefault("mix", "chat:70,stream:20,models:10"));
+
+        FakeGeminiServer fake = null;
+        ConfigurableApplicationContext app = null;
+        String target = options.get("target");
+        try {
+            if (target == null) {
+                FakeGeminiServer.Settings settings = FakeGeminiServer.Settings.defaults()
+                        .withLatency(Duration.ofMillis(Long.parseLong(options.getOrDefault("median-ms", "300"))),
+                                Double.parseDouble(options.getOrDefault("sigma", "0.5")))
+                        .withRateLimitRate(Double.parseDouble(options.getOrDefault("rate-limit", "0")));
+                fake = FakeGeminiServer.start(0, settings);
+                app = new SpringApplicationBuilder(SpringIaApplication.class)
+                        .properties(
+                                "server.port=0",
+                                "spring.ai.google.genai.api-key=load-test",
+                                "chat.gemini.base-url=" + fake.baseUrl(),
+                                "chat.quota.default.requests-per-minute=1000000",
+                                "logging.level.com.keniding.springia=WARN")
+                        .run();
+                target = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+            }
+
+            System.out.printf("Carga: %d rps durante %ds contra %s (mezcla %s)%n",
+                    rps, duration.toSeconds(), target, mix);
+            new LoadTestHarness(target).run(rps, duration, mix);
+
+            if (fake != null) {
+                System.out.printf("Gemini simulado: %d generaciones, %d respuestas 429%n",
+                        fake.generateRequests(), fake.rateLimited());
+            }
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (fake != null) {
+                fake.close();
+            }
+        }
+    }
+
+    private void run(int rps, Duration duration, Map<Scenario, Integer> mix) throws InterruptedException {
+        Scenario[] schedule = weightedSchedule(mix);
+        Random random = new Random(42);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        long total = duration.toSeconds() * rps;
+        long startNanos = System.nanoTime();
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long intendedNanos = startNanos + i * intervalNanos;
+                long waitNanos = intendedNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                Scenario scenario = schedule[random.nextInt(schedule.length)];
+                long sequence = i;
+                requests.execute(() -> execute(scenario, sequence, intendedNanos));
+            }
+        }
+
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        report(elapsedSeconds);
+    }
+
+    private void execute(Scenario scenario, long sequence, long intendedNanos) {
+        Results result = results.get(scenario);
+        String message = URLEncoder.encode("Pregunta de carga número " + sequence, StandardCharsets.UTF_8);
+        URI uri = URI.create(switch (scenario) {
+            case CHAT -> target + "/api/chat?message=" + message;
+            case STREAM -> target + "/api/chat/stream?message=" + message;
+            case MODELS -> target + "/api/models";
+        });
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(120))
+                .GET()
+                .build();
+
+        try {
+            HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            long firstByteNanos = 0;
+            try (InputStream body = response.body()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    if (firstByteNanos == 0 && read > 0) {
+                        firstByteNanos = System.nanoTime();
+                    }
+                }
+            }
+            long endNanos = System.nanoTime();
+            result.record(response.statusCode(), endNanos - intendedNanos,
+                    firstByteNanos > 0 ? firstByteNanos - intendedNanos : -1);
+        } catch (Exception e) {
+            result.failure(e.getClass().getSimpleName());
+        }
+    }
+
+    private void report(double elapsedSeconds) {
+        System.out.printf("%n%-8s %8s %9s %8s %8s %8s %8s %8s %8s  %s%n",
+                "ruta", "total", "ok/s", "p50 ms", "p90 ms", "p99 ms", "p99.9", "max ms", "ttfb p50", "estados");
+        results.forEach((scenario, result) -> result.print(scenario, elapsedSeconds));
+    }
+
+    private static Scenario[] weightedSchedule(Map<Scenario, Integer> mix) {
+        return mix.entrySet().stream()
+                .flatMap(entry -> Stream.generate(entry::getKey).limit(entry.getValue()))
+                .toArray(Scenario[]::new);
+    }
+
+    private static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.split(":");
+            weights.put(Scenario.valueOf(pair[0].strip().toUpperCase()), Integer.parseInt(pair[1].strip()));
+        }
+        return weights;
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int equals = arg.indexOf('=');
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    /** Latencias y códigos de estado de un escenario. */
+    private static final class Results {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] latencies = new long[1024];
+        private long[] firstBytes = new long[1024];
+        private int count;
+        private int firstByteCount;
+        private final LongAdder ok = new LongAdder();
+        private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(int status, long latencyNanos, long firstByteNanos) {
+            statuses.computeIfAbsent(String.valueOf(status), _ -> new LongAdder()).increment();
+            if (status >= 200 && status < 300) {
+                ok.increment();
+            }
+            lock.lock();
+            try {
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = latencyNanos;
+                if (firstByteNanos >= 0) {
+                    if (firstByteCount == firstBytes.length) {
+                        firstBytes = Arrays.copyOf(firstBytes, firstByteCount * 2);
+                    }
+                    firstBytes[firstByteCount++] = firstByteNanos;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void failure(String cause) {
+            statuses.computeIfAbsent(cause, _ -> new LongAdder()).increment();
+        }
+
+        void print(Scenario scenario, double elapsedSeconds) {
+            long[] sorted;
+            long[] sortedFirstBytes;
+            lock.lock();
+            try {
+                sorted = Arrays.copyOf(latencies, count);
+                sortedFirstBytes = Arrays.copyOf(firstBytes, firstByteCount);
+            } finally {
+                lock.unlock();
+            }
+            if (sorted.length == 0 && statuses.isEmpty()) {
+                return;
+            }
+            Arrays.sort(sorted);
+            Arrays.sort(sortedFirstBytes);
+
+            Map<String, Long> statusCounts = new TreeMap<>();
+            statuses.forEach((status, counter) -> statusCounts.put(status, counter.sum()));
+
+            System.out.printf("%-8s %8d %9.1f %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f  %s%n",
+                    scenario.name().toLowerCase(),
+                    statusCounts.values().stream().mapToLong(Long::longValue).sum(),
+                    ok.sum() / elapsedSeconds,
+                    percentileMs(sorted, 0.50),
+                    percentileMs(sorted, 0.90),
+                    percentileMs(sorted, 0.99),
+                    percentileMs(sorted, 0.999),
+                    percentileMs(sorted, 1.0),
+                    percentileMs(sortedFirstBytes, 0.50),
+                    statusCounts);
+        }
+
+        private static double percentileMs(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.clamp(index, 0, sorted.length - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.keniding.springia.startup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mide el arranque de la aplicación lanzando el comando dado varias veces y
+ * falla si la mediana supera el presupuesto. El comando debe terminar solo en
+ * cuanto el contexto está listo ({@code -Dspring.context.exit=onRefresh}),
+ * así que se mide el tiempo de reloj completo, JVM incluida. Además se
+ * informa el "Started ... in X seconds" que registra Spring Boot.
+ * <p>
+ * Uso (lo lanza el perfil {@code startup} del pom):
+ * <pre>
+ * StartupTimer --runs=5 --max-millis=3000 -- java -XX:AOTCache=app.aot ... -jar app.jar
+ * </pre>
+ */
+public final class StartupTimer {
+
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in ([0-9.]+) seconds");
+
+    private StartupTimer() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator < 0 || separator == args.length - 1) {
+            System.err.println("Uso: StartupTimer [--runs=5] [--max-millis=3000] -- <comando>");
+            System.exit(2);
+        }
+        Map<String, String> options = parseOptions(Arrays.copyOfRange(args, 0, separator));
+        List<String> command = List.of(Arrays.copyOfRange(args, separator + 1, args.length));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        long maxMillis = Long.parseLong(options.getOrDefault("max-millis", "3000"));
+
+        long[] wall = new long[runs];
+        List<String> reported = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long startNanos = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String started = null;
+            List<String> output = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.add(line);
+                    Matcher matcher = STARTED.matcher(line);
+                    if (matcher.find()) {
+                        started = matcher.group(1);
+                    }
+                }
+            }
+            int exit = process.waitFor();
+            wall[i] = (System.nanoTime() - startNanos) / 1_000_000;
+            if (exit != 0) {
+                output.forEach(System.err::println);
+                throw new IOException("El arranque terminó con código " + exit);
+            }
+            reported.add(started != null ? started + " s" : "?");
+            System.out.printf("Arranque %d: %d ms (Spring: %s)%n", i + 1, wall[i], reported.getLast());
+        }
+
+        long[] sorted = wall.clone();
+        Arrays.sort(sorted);
+        long median = sorted[runs / 2];
+        System.out.printf("Arranque: mediana %d ms, mínimo %d ms, máximo %d ms (presupuesto %d ms)%n",
+                median, sorted[0], sorted[runs - 1], maxMillis);
+        if (median > maxMillis) {
+            System.err.printf("Regresión de arranque: mediana %d ms > %d ms%n", median, maxMillis);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int equals = arg.indexOf('=');
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+}